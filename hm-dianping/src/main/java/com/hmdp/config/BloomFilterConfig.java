@@ -0,0 +1,59 @@
+package com.hmdp.config;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.hmdp.mapper.BlogMapper;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.mapper.VoucherMapper;
+import com.hmdp.utils.RedisBloomFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+// 商铺、博文、优惠券的 id 布隆过滤器，用于拦截不存在的 id，防止缓存穿透
+@Configuration
+public class BloomFilterConfig {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${hmdp.bloom.expected-insertions:1000000}")
+    private long expectedInsertions;
+    @Value("${hmdp.bloom.fpp:0.01}")
+    private double fpp;
+
+    @Bean
+    public RedisBloomFilter shopBloomFilter(ShopMapper shopMapper) {
+        return new RedisBloomFilter(BLOOM_SHOP_KEY, stringRedisTemplate, expectedInsertions, fpp, idLoader(shopMapper));
+    }
+
+    @Bean
+    public RedisBloomFilter blogBloomFilter(BlogMapper blogMapper) {
+        return new RedisBloomFilter(BLOOM_BLOG_KEY, stringRedisTemplate, expectedInsertions, fpp, idLoader(blogMapper));
+    }
+
+    @Bean
+    public RedisBloomFilter voucherBloomFilter(VoucherMapper voucherMapper) {
+        return new RedisBloomFilter(BLOOM_VOUCHER_KEY, stringRedisTemplate, expectedInsertions, fpp, idLoader(voucherMapper));
+    }
+
+    // 按 id 升序查询大于 lastId 的一批 id
+    private static <T> Function<Long, List<Long>> idLoader(BaseMapper<T> mapper) {
+        return lastId -> mapper.selectObjs(new QueryWrapper<T>()
+                        .select("id")
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("limit " + RedisBloomFilter.BATCH_SIZE))
+                .stream()
+                .map(id -> ((Number) id).longValue())
+                .collect(Collectors.toList());
+    }
+}
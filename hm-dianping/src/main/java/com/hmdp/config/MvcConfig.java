@@ -1,13 +1,16 @@
 package com.hmdp.config;
 
+import com.hmdp.utils.AdminInterceptor;
 import com.hmdp.utils.LoginInterceptor;
 import com.hmdp.utils.RefreshTokenInterceptor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 import javax.annotation.Resource;
+import java.util.Set;
 
 @Configuration
 public class MvcConfig implements WebMvcConfigurer {
@@ -16,6 +19,10 @@ public class MvcConfig implements WebMvcConfigurer {
     // 因为此处存在 @Configuration 注解，说明是使用spring导入，    // 所以可以直接使用@Autowired
     private StringRedisTemplate stringRedisTemplate;
 
+    // 可以访问缓存管理、订单队列状态等管理接口的用户id
+    @Value("${hmdp.admin.user-ids:}")
+    private Set<Long> adminUserIds;
+
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
@@ -36,6 +43,10 @@ public class MvcConfig implements WebMvcConfigurer {
                         "/webjars/**",
                         "/doc.html"
                 ).order(1);
+        // 管理接口：登录后还必须是管理员
+        registry.addInterceptor(new AdminInterceptor(adminUserIds))
+                .addPathPatterns("/cache/**", "/voucher-order/queue/**")
+                .order(2);
         // 调高token拦截器的优先级
         registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate)).order(0);
     }
@@ -0,0 +1,55 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.BinaryCacheCodec;
+import com.hmdp.utils.CacheCodec;
+import com.hmdp.utils.HotKeyDetector;
+import com.hmdp.utils.JsonCacheCodec;
+import com.hmdp.utils.LocalCache;
+import com.hmdp.utils.SeckillAdmission;
+import com.hmdp.utils.SeckillVoucherTable;
+import com.hmdp.utils.ShopBinarySchema;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_REPLENISH_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_VOUCHER_CHANNEL;
+
+@Configuration
+public class RedisConfig {
+
+    // 订阅缓存失效的频道，收到消息后删除本地缓存和热点副本；订阅秒杀售罄、补充库存和秒杀券变更的频道
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       LocalCache localCache,
+                                                                       HotKeyDetector hotKeyDetector,
+                                                                       SeckillAdmission seckillAdmission,
+                                                                       SeckillVoucherTable seckillVoucherTable) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(localCache, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+        container.addMessageListener(hotKeyDetector, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+        container.addMessageListener(seckillAdmission, Arrays.asList(
+                new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL), new ChannelTopic(SECKILL_REPLENISH_CHANNEL)));
+        container.addMessageListener(seckillVoucherTable, new ChannelTopic(SECKILL_VOUCHER_CHANNEL));
+        return container;
+    }
+
+    // 缓存值的编解码器，binary 可以读取旧的 json 数据，json 不能读取 binary 数据
+    @Bean
+    public CacheCodec cacheCodec(@Value("${hmdp.cache.codec:binary}") String codec) {
+        JsonCacheCodec jsonCodec = new JsonCacheCodec();
+        if ("json".equalsIgnoreCase(codec)) {
+            return jsonCodec;
+        }
+        return new BinaryCacheCodec(jsonCodec, Collections.singletonList(new ShopBinarySchema()));
+    }
+}
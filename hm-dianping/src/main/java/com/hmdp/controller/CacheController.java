@@ -0,0 +1,111 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopTypeSnapshot;
+import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.CacheMetrics;
+import com.hmdp.utils.CacheRebuildExecutor;
+import com.hmdp.utils.HotKeyDetector;
+import com.hmdp.utils.LocalCache;
+import com.hmdp.utils.ShopCacheWarmer;
+import com.hmdp.utils.ShopGeoIndex;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * 缓存监控
+ * </p>
+ */
+@RestController
+@RequestMapping("/cache")
+public class CacheController {
+
+    @Resource
+    private CacheMetrics cacheMetrics;
+    @Resource
+    private LocalCache localCache;
+    @Resource
+    private ShopCacheWarmer shopCacheWarmer;
+    @Resource
+    private ShopGeoIndex shopGeoIndex;
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+    @Resource
+    private CacheRebuildExecutor cacheRebuildExecutor;
+    @Resource
+    private IShopTypeService shopTypeService;
+
+    /**
+     * 查询各级缓存的命中率和耗时，以及重建线程池的状态
+     * @return 统计数据
+     */
+    @GetMapping("/stats")
+    public Result stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("levels", cacheMetrics.snapshot());
+        stats.put("localCache", localCache.stats());
+        stats.put("rebuild", cacheRebuildExecutor.stats());
+        return Result.ok(stats);
+    }
+
+    /**
+     * 查询当前节点的热点 key
+     * @return 热点 key 及其窗口内的访问次数
+     */
+    @GetMapping("/hot-keys")
+    public Result hotKeys() {
+        return Result.ok(hotKeyDetector.hotKeys());
+    }
+
+    /**
+     * 手动触发商铺缓存预热
+     * @return 预热进度
+     */
+    @PostMapping("/warmup/shop")
+    public Result warmUpShop() {
+        if (!shopCacheWarmer.start()) {
+            return Result.fail("预热正在进行中");
+        }
+        return Result.ok(shopCacheWarmer.status());
+    }
+
+    /**
+     * 查询商铺缓存预热的进度和吞吐量
+     * @return 预热进度
+     */
+    @GetMapping("/warmup/shop")
+    public Result warmUpShopStatus() {
+        return Result.ok(shopCacheWarmer.status());
+    }
+
+    /**
+     * 从数据库重新加载商铺的 GEO 索引
+     * @return 加载的商铺数量
+     */
+    @PostMapping("/warmup/shop-geo")
+    public Result loadShopGeo() {
+        return Result.ok(shopGeoIndex.load());
+    }
+
+    /**
+     * 从数据库重新加载商铺类型快照，修改 tb_shop_type 后调用
+     * @return 快照的版本和 etag
+     */
+    @PostMapping("/refresh/shop-type")
+    public Result refreshShopType() {
+        ShopTypeSnapshot snapshot = shopTypeService.refreshSnapshot();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("version", snapshot.getVersion());
+        result.put("etag", snapshot.getEtag());
+        result.put("size", snapshot.getTypes().size());
+        return Result.ok(result);
+    }
+}
@@ -1,8 +1,6 @@
 package com.hmdp.controller;
 
 
-import cn.hutool.core.util.StrUtil;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.service.IShopService;
@@ -10,6 +8,8 @@ import com.hmdp.utils.SystemConstants;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * <p>
@@ -36,6 +36,19 @@ public class ShopController {
         return shopService.queryById(id);
     }
 
+    /**
+     * 根据id批量查询商铺信息，用于列表页一次加载多个商铺
+     * @param ids 商铺id，逗号分隔
+     * @return 商铺详情列表，按ids的顺序排列，不存在的商铺不返回
+     */
+    @GetMapping("/batch")
+    public Result queryShopByIds(@RequestParam("ids") List<Long> ids) {
+        if (ids.size() > SystemConstants.MAX_PAGE_SIZE) {
+            return Result.fail("一次最多查询" + SystemConstants.MAX_PAGE_SIZE + "个商铺");
+        }
+        return shopService.queryByIds(ids);
+    }
+
     /**
      * 新增商铺信息
      * @param shop 商铺数据
@@ -43,10 +56,8 @@ public class ShopController {
      */
     @PostMapping
     public Result saveShop(@RequestBody Shop shop) {
-        // 写入数据库
-        shopService.save(shop);
-        // 返回店铺id
-        return Result.ok(shop.getId());
+        // 写入数据库，并加入布隆过滤器
+        return shopService.saveShop(shop);
     }
 
     /**
@@ -63,26 +74,32 @@ public class ShopController {
     /**
      * 根据商铺类型分页查询商铺信息
      * @param typeId 商铺类型
-     * @param current 页码
+     * @param current 页码，从 1 开始，最多 SystemConstants.MAX_PAGE 页
+     * @param x 经度，与纬度同时传入时按距离由近到远查询
+     * @param y 纬度
      * @return 商铺列表
      */
     @GetMapping("/of/type")
     public Result queryShopByType(
             @RequestParam("typeId") Integer typeId,
-            @RequestParam(value = "current", defaultValue = "1") Integer current
+            @RequestParam(value = "current", defaultValue = "1") Integer current,
+            @RequestParam(value = "x", required = false) Double x,
+            @RequestParam(value = "y", required = false) Double y
     ) {
-        // 根据类型分页查询
-        Page<Shop> page = shopService.query()
-                .eq("type_id", typeId)
-                .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
-        // 返回数据
-        return Result.ok(page.getRecords());
+        // 页码从 1 开始，超过最大页数时按没有下一页处理
+        if (current < 1) {
+            return Result.fail("页码必须大于0");
+        }
+        if (current > SystemConstants.MAX_PAGE) {
+            return Result.ok(Collections.emptyList());
+        }
+        return shopService.queryShopByType(typeId, current, x, y);
     }
 
     /**
      * 根据商铺名称关键字分页查询商铺信息
      * @param name 商铺名称关键字
-     * @param current 页码
+     * @param current 页码，从 1 开始，最多 SystemConstants.MAX_PAGE 页
      * @return 商铺列表
      */
     @GetMapping("/of/name")
@@ -90,11 +107,13 @@ public class ShopController {
             @RequestParam(value = "name", required = false) String name,
             @RequestParam(value = "current", defaultValue = "1") Integer current
     ) {
-        // 根据类型分页查询
-        Page<Shop> page = shopService.query()
-                .like(StrUtil.isNotBlank(name), "name", name)
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 返回数据
-        return Result.ok(page.getRecords());
+        // 页码从 1 开始，超过最大页数时按没有下一页处理
+        if (current < 1) {
+            return Result.fail("页码必须大于0");
+        }
+        if (current > SystemConstants.MAX_PAGE) {
+            return Result.ok(Collections.emptyList());
+        }
+        return shopService.queryShopByName(name, current);
     }
 }
@@ -4,12 +4,19 @@ package com.hmdp.controller;
 import com.hmdp.dto.Result;
 import com.hmdp.service.IVoucherOrderService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.SeckillAdmission;
+import com.hmdp.utils.SeckillVoucherTable;
+import com.hmdp.utils.VoucherOrderJournal;
+import com.hmdp.utils.VoucherOrderQueue;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * <p>
@@ -25,6 +32,14 @@ public class VoucherOrderController {
 
     @Resource
     public IVoucherOrderService voucherOrderService;
+    @Resource
+    private VoucherOrderQueue voucherOrderQueue;
+    @Resource
+    private VoucherOrderJournal voucherOrderJournal;
+    @Resource
+    private SeckillAdmission seckillAdmission;
+    @Resource
+    private SeckillVoucherTable seckillVoucherTable;
 
     /**
      * 秒杀优惠券
@@ -35,4 +50,17 @@ public class VoucherOrderController {
     public Result seckillVoucher(@PathVariable("id") Long voucherId) {
         return voucherOrderService.seckillVoucher(voucherId);
     }
+
+    /**
+     * 查询秒杀订单队列的状态
+     * @return 队列中等待写入的订单数、已处理的订单数、预写日志、本地准入和秒杀时间表的状态
+     */
+    @GetMapping("queue/stats")
+    public Result queueStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(voucherOrderQueue.stats());
+        stats.put("journal", voucherOrderJournal.stats());
+        stats.put("admission", seckillAdmission.stats());
+        stats.put("vouchers", seckillVoucherTable.stats());
+        return Result.ok(stats);
+    }
 }
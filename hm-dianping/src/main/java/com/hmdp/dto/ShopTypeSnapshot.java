@@ -0,0 +1,26 @@
+package com.hmdp.dto;
+
+import com.hmdp.entity.ShopType;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 商铺类型列表的不可变快照，响应体已经提前序列化，etag 由内容计算，所有节点相同
+ */
+@Getter
+public class ShopTypeSnapshot {
+
+    private final long version;
+    private final String etag;
+    private final List<ShopType> types;
+    private final byte[] body;
+
+    public ShopTypeSnapshot(long version, String etag, List<ShopType> types, byte[] body) {
+        this.version = version;
+        this.etag = etag;
+        this.types = Collections.unmodifiableList(types);
+        this.body = body;
+    }
+}
@@ -0,0 +1,28 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 批量写入订单的结果，每个订单都有一个结果
+ */
+@Data
+public class VoucherOrderBatchResult {
+    // 本次写入的订单id
+    private final Set<Long> created = new LinkedHashSet<>();
+    // 之前已经写入的订单id，消息重复投递时出现
+    private final Set<Long> existing = new LinkedHashSet<>();
+    // 没有写入的订单id和原因
+    private final Map<Long, String> rejected = new LinkedHashMap<>();
+
+    /**
+     * 订单是否已经在数据库中：本次写入或之前已经写入，结果中没有的订单不算
+     */
+    public boolean isPersisted(Long orderId) {
+        return created.contains(orderId) || existing.contains(orderId);
+    }
+}
@@ -0,0 +1,53 @@
+package com.hmdp.service;
+
+import com.hmdp.entity.SeckillStockBucket;
+import com.baomidou.mybatisplus.extension.service.IService;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>
+ *  服务类
+ * </p>
+ */
+public interface ISeckillStockBucketService extends IService<SeckillStockBucket> {
+
+    /**
+     * 在当前事务中把库存平均拆分到多个分桶
+     * @return 每个分桶的库存
+     */
+    int[] split(Long voucherId, int stock, int buckets);
+
+    /**
+     * 优惠券的分桶数，没有分桶时为 1，秒杀券已经创建时结果缓存在本地
+     */
+    int bucketCount(Long voucherId);
+
+    /**
+     * 分桶数大于 1 并且还没有结束的秒杀券，从数据库查询
+     */
+    Set<Long> bucketedVouchers();
+
+    /**
+     * 按分桶编号排列的分桶
+     */
+    List<SeckillStockBucket> listBuckets(Long voucherId);
+
+    /**
+     * 按分桶编号升序找到一个库存不少于 n 的分桶扣减 n
+     * @return 所有分桶都不够扣减时返回 false
+     */
+    boolean deduct(Long voucherId, int n);
+
+    /**
+     * 把 n 个库存归还到 hint 对应的分桶
+     */
+    void restore(Long voucherId, int n, long hint);
+
+    /**
+     * 有分桶的库存不超过 threshold 而其它分桶还有剩余时，把剩余库存平均分配到所有分桶
+     * @return 是否重新分配
+     */
+    boolean rebalance(Long voucherId, int threshold);
+}
@@ -1,5 +1,6 @@
 package com.hmdp.service;
 
+import com.hmdp.dto.ShopTypeSnapshot;
 import com.hmdp.entity.ShopType;
 import com.baomidou.mybatisplus.extension.service.IService;
 
@@ -13,4 +14,13 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface IShopTypeService extends IService<ShopType> {
 
+    /**
+     * 当前的商铺类型快照，第一次调用时从数据库加载
+     */
+    ShopTypeSnapshot snapshot();
+
+    /**
+     * 从数据库重新加载，内容变化时发布新的快照
+     */
+    ShopTypeSnapshot refreshSnapshot();
 }
@@ -1,9 +1,12 @@
 package com.hmdp.service;
 
 import com.hmdp.dto.Result;
+import com.hmdp.dto.VoucherOrderBatchResult;
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -16,5 +19,15 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
 
     Result seckillVoucher(Long voucherId);
 
-    Result createVoucherOrder(Long voucherId);
+    /**
+     * 批量写入订单，每个优惠券只扣减一次库存，已经存在的订单会被跳过
+     * @return 每个订单的结果：写入、已经存在或被拒绝
+     */
+    VoucherOrderBatchResult createVoucherOrders(List<VoucherOrder> voucherOrders);
+
+    /**
+     * 只写入订单，不扣减库存：每条多行 INSERT 最多 batchSize 行，一条语句失败时逐行写入，找出失败的订单
+     * @return 写入的订单、主键冲突（已经存在）的订单和写入失败的订单及原因
+     */
+    VoucherOrderBatchResult insertVoucherOrders(List<VoucherOrder> voucherOrders, int batchSize);
 }
@@ -1,11 +1,25 @@
 package com.hmdp.service.impl;
 
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
+import com.hmdp.entity.User;
 import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheStrategy;
+import com.hmdp.utils.RedisBloomFilter;
+import com.hmdp.utils.UserHolder;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Resource;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_BLOG_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_BLOG_TTL;
+
 /**
  * <p>
  *  服务实现类
@@ -17,4 +31,61 @@ import org.springframework.stereotype.Service;
 @Service
 public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IBlogService {
 
+    @Resource
+    private IUserService userService;
+    @Resource
+    private RedisBloomFilter blogBloomFilter;
+    @Resource
+    private CacheClient cacheClient;
+
+    @Override
+    public Result saveBlog(Blog blog) {
+        // 1.获取登录用户
+        UserDTO user = UserHolder.getUser();
+        blog.setUserId(user.getId());
+        // 2.保存探店博文
+        save(blog);
+        // 3.加入布隆过滤器
+        blogBloomFilter.add(blog.getId());
+        // 4.返回id
+        return Result.ok(blog.getId());
+    }
+
+    @Override
+    public Result queryBlogById(Long id) {
+        // 1.布隆过滤器判断不存在，说明博文一定不存在
+        if (!blogBloomFilter.mightContain(id)) {
+            return Result.fail("博文不存在");
+        }
+        // 2.查询博文和发布博文的用户，缓存的是填好用户信息的博文，返回的对象是共享的，不能修改
+        Blog blog = cacheClient.query(CACHE_BLOG_KEY, id, Blog.class, this::loadBlog,
+                CACHE_BLOG_TTL, TimeUnit.MINUTES, CacheStrategy.PASS_THROUGH);
+        if (blog == null) {
+            return Result.fail("博文不存在");
+        }
+        return Result.ok(blog);
+    }
+
+    @Override
+    public Result likeBlog(Long id) {
+        // 1.修改点赞数量
+        update().setSql("liked = liked + 1").eq("id", id).update();
+        // 2.删除 redis 和所有节点的本地缓存
+        cacheClient.delete(CACHE_BLOG_KEY + id);
+        return Result.ok();
+    }
+
+    // 查询博文，并填入发布博文的用户
+    private Blog loadBlog(Long id) {
+        Blog blog = getById(id);
+        if (blog == null) {
+            return null;
+        }
+        User user = userService.getById(blog.getUserId());
+        if (user != null) {
+            blog.setName(user.getNickName());
+            blog.setIcon(user.getIcon());
+        }
+        return blog;
+    }
 }
@@ -0,0 +1,55 @@
+package com.hmdp.service.impl;
+
+import com.hmdp.entity.CacheOutbox;
+import com.hmdp.mapper.CacheOutboxMapper;
+import com.hmdp.service.ICacheOutboxService;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.CacheOutboxRelay;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ *  服务实现类
+ * </p>
+ */
+@Service
+public class CacheOutboxServiceImpl extends ServiceImpl<CacheOutboxMapper, CacheOutbox> implements ICacheOutboxService {
+
+    @Lazy
+    @Resource
+    private CacheOutboxRelay cacheOutboxRelay;
+
+    @Override
+    public void invalidate(String... keys) {
+        // 1.与业务数据在同一个事务中写入失效记录，事务回滚时记录也一起回滚
+        LocalDateTime now = LocalDateTime.now();
+        List<CacheOutbox> records = new ArrayList<>(keys.length);
+        for (String key : keys) {
+            records.add(new CacheOutbox()
+                    .setCacheKey(key)
+                    .setStatus(CacheOutbox.STATUS_PENDING)
+                    .setRetryCount(0)
+                    .setNextTime(now));
+        }
+        saveBatch(records);
+        // 2.事务提交后立即通知中继处理，没有事务时直接通知
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            cacheOutboxRelay.wakeUp();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                cacheOutboxRelay.wakeUp();
+            }
+        });
+    }
+}
@@ -0,0 +1,174 @@
+package com.hmdp.service.impl;
+
+import com.hmdp.entity.SeckillStockBucket;
+import com.hmdp.mapper.SeckillStockBucketMapper;
+import com.hmdp.service.ISeckillStockBucketService;
+import com.hmdp.service.ISeckillVoucherService;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ *  服务实现类
+ * </p>
+ */
+@Slf4j
+@Service
+public class SeckillStockBucketServiceImpl extends ServiceImpl<SeckillStockBucketMapper, SeckillStockBucket> implements ISeckillStockBucketService {
+
+    // 优惠券的分桶数，只缓存已经提交的秒杀券，分桶创建或重新分配后更新
+    private final Map<Long, Integer> bucketCounts = new ConcurrentHashMap<>();
+
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+
+    @Override
+    public int[] split(Long voucherId, int stock, int buckets) {
+        int[] stocks = splitStock(stock, buckets);
+        List<SeckillStockBucket> rows = new ArrayList<>(buckets);
+        for (int i = 0; i < buckets; i++) {
+            rows.add(new SeckillStockBucket().setVoucherId(voucherId).setBucket(i).setStock(stocks[i]));
+        }
+        saveBatch(rows);
+        // 事务提交后才缓存，回滚时不留下不存在的分桶
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    bucketCounts.put(voucherId, buckets);
+                }
+            });
+        } else {
+            bucketCounts.put(voucherId, buckets);
+        }
+        return stocks;
+    }
+
+    @Override
+    public int bucketCount(Long voucherId) {
+        Integer count = bucketCounts.get(voucherId);
+        if (count != null) {
+            return count;
+        }
+        // 1.先查询秒杀券，分桶与秒杀券在同一个事务中创建，秒杀券存在时分桶一定已经提交
+        boolean created = seckillVoucherService.query().eq("voucher_id", voucherId).count() > 0;
+        int buckets = Math.max(1, query().eq("voucher_id", voucherId).count());
+        // 2.秒杀券还没有创建时不缓存，避免创建后仍然按没有分桶处理
+        if (created) {
+            bucketCounts.put(voucherId, buckets);
+        }
+        return buckets;
+    }
+
+    @Override
+    public Set<Long> bucketedVouchers() {
+        // 每个分桶的优惠券都有编号为 1 的分桶，只查询还没有结束的秒杀券
+        List<SeckillStockBucket> rows = query().select("voucher_id")
+                .eq("bucket", 1)
+                .inSql("voucher_id", "select voucher_id from tb_seckill_voucher where end_time > now()")
+                .list();
+        Set<Long> vouchers = new HashSet<>();
+        for (SeckillStockBucket row : rows) {
+            vouchers.add(row.getVoucherId());
+        }
+        return vouchers;
+    }
+
+    @Override
+    public List<SeckillStockBucket> listBuckets(Long voucherId) {
+        return query().eq("voucher_id", voucherId).orderByAsc("bucket").list();
+    }
+
+    @Override
+    public boolean deduct(Long voucherId, int n) {
+        int buckets = bucketCount(voucherId);
+        // 按分桶编号升序查找，扣减失败的分桶在事务结束前仍然持有行锁，所有事务按相同顺序加锁才不会死锁
+        for (int i = 0; i < buckets; i++) {
+            boolean success = update()
+                    .setSql("stock = stock - " + n)
+                    .eq("voucher_id", voucherId)
+                    .eq("bucket", i)
+                    .ge("stock", n)
+                    .update();
+            if (success) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void restore(Long voucherId, int n, long hint) {
+        int buckets = bucketCount(voucherId);
+        update().setSql("stock = stock + " + n)
+                .eq("voucher_id", voucherId)
+                .eq("bucket", (int) Math.floorMod(hint, (long) buckets))
+                .update();
+    }
+
+    @Override
+    @Transactional
+    public boolean rebalance(Long voucherId, int threshold) {
+        // 1.不加锁检查，大多数时候不需要重新分配，不占用热点行的锁
+        if (!needsRebalance(listBuckets(voucherId), threshold)) {
+            return false;
+        }
+        // 2.锁定所有分桶后重新检查并分配
+        List<SeckillStockBucket> buckets = query().eq("voucher_id", voucherId)
+                .orderByAsc("bucket").last("for update").list();
+        if (buckets.isEmpty()) {
+            bucketCounts.remove(voucherId);
+            return false;
+        }
+        // 用锁定的分桶刷新缓存的分桶数
+        bucketCounts.put(voucherId, buckets.size());
+        if (!needsRebalance(buckets, threshold)) {
+            return false;
+        }
+        int total = 0;
+        for (SeckillStockBucket bucket : buckets) {
+            total += Math.max(0, bucket.getStock());
+        }
+        int[] stocks = splitStock(total, buckets.size());
+        for (int i = 0; i < stocks.length; i++) {
+            buckets.get(i).setStock(stocks[i]);
+        }
+        updateBatchById(buckets);
+        log.info("重新分配秒杀库存分桶，voucherId：{}，总库存：{}", voucherId, total);
+        return true;
+    }
+
+    // 有分桶的库存不超过 threshold，并且重新分配后每个分桶都能超过 threshold
+    private static boolean needsRebalance(List<SeckillStockBucket> buckets, int threshold) {
+        int total = 0;
+        boolean drained = false;
+        for (SeckillStockBucket bucket : buckets) {
+            total += Math.max(0, bucket.getStock());
+            drained |= bucket.getStock() <= threshold;
+        }
+        return drained && total >= buckets.size() * (threshold + 1);
+    }
+
+    /**
+     * 平均拆分库存，余数分配给编号小的分桶
+     */
+    static int[] splitStock(int stock, int buckets) {
+        int[] result = new int[buckets];
+        for (int i = 0; i < buckets; i++) {
+            result[i] = stock / buckets + (i < stock % buckets ? 1 : 0);
+        }
+        return result;
+    }
+}
@@ -1,25 +1,39 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSON;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
+import com.hmdp.service.ICacheOutboxService;
 import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.hmdp.utils.RedisData;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheStrategy;
+import com.hmdp.utils.RedisBloomFilter;
+import com.hmdp.utils.ShopChangedEvent;
+import com.hmdp.utils.ShopGeoIndex;
+import com.hmdp.utils.ShopNameIndex;
+import com.hmdp.utils.ShopSpatialIndex;
+import org.springframework.context.ApplicationEventPublisher;
+import com.hmdp.utils.SystemConstants;
+import org.springframework.data.geo.GeoResult;
+import org.springframework.data.redis.connection.RedisGeoCommands;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
 
-import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 
@@ -35,19 +49,29 @@ import static com.hmdp.utils.RedisConstants.*;
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
 
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private CacheClient cacheClient;
+    @Resource
+    private RedisBloomFilter shopBloomFilter;
+    @Resource
+    private ICacheOutboxService cacheOutboxService;
+    @Resource
+    private ShopGeoIndex shopGeoIndex;
+    @Resource
+    private ShopSpatialIndex shopSpatialIndex;
+    @Resource
+    private ShopNameIndex shopNameIndex;
+    @Resource
+    private ApplicationEventPublisher eventPublisher;
+
     @Override
     public Result queryById(Long id) {
-        // 缓存穿透
-        //Shop shop = queryWithPassThrough(id);
-
-        // 缓存击穿，利用互斥锁解决
-        Shop shop = queryWithMutex(id);
-
-        // 缓存击穿，利用逻辑过期解决
-        // Shop shop = queryWithLogicalExpire(id);
-
-
+        // 布隆过滤器判断不存在，说明商铺一定不存在，不再查询 redis 和数据库
+        if (!shopBloomFilter.mightContain(id)) {
+            return Result.fail("商铺不存在");
+        }
+        // 商铺缓存由 ShopCacheWarmer 预热为逻辑过期格式，所以使用逻辑过期解决缓存击穿
+        Shop shop = cacheClient.query(CACHE_SHOP_KEY, id, Shop.class, this::getById,
+                CACHE_SHOP_TTL, TimeUnit.MINUTES, CacheStrategy.LOGICAL_EXPIRE);
         if (shop == null) {
             // 说明商铺不存在，返回错误信息
             return Result.fail("商铺不存在");
@@ -57,199 +81,142 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         return Result.ok(shop);
     }
 
-    //解决缓存穿透的方法
-    public Shop queryWithPassThrough(Long id) {
-        //1.根据id判断 redis 中是否存在商铺
-        String key = CACHE_SHOP_KEY + id;
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        //2.判断缓存是否命中
-        if (StrUtil.isNotBlank(shopJson)) {
-            //3.如果命中，直接返回
-            return JSONUtil.toBean(shopJson, Shop.class);
-        }
-        if(shopJson != null) {
-            // 说明缓存中有，但是数据库中不存在
-            return null;
-        }
-        //4.如果没有命中，查询数据库
-        Shop shop = getById(id);
-        //5.判断数据库是否存在
-        if (shop == null) {
-            //6.如果不存在，返回错误信息
-            //防止缓存穿透，将空值存入redis     //注：字符串为空并不等于null
-            stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-            return null;
+    @Override
+    public Result queryByIds(List<Long> ids) {
+        // 1.去掉布隆过滤器判断不存在的 id
+        List<Long> candidates = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            if (shopBloomFilter.mightContain(id)) {
+                candidates.add(id);
+            }
         }
-        //7.如果存在，将数据存储到redis中
-        //将对象转换为json字符串
-        String json = JSONUtil.toJsonStr(shop);
-        stringRedisTemplate.opsForValue().set(key, json,CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        // 2.批量查询缓存，未命中的 id 一次 IN 查询数据库，与 queryById 一样使用逻辑过期
+        Map<Long, Shop> shops = cacheClient.queryBatch(CACHE_SHOP_KEY, candidates, Shop.class, this::listShopByIds,
+                CACHE_SHOP_TTL, TimeUnit.MINUTES, CacheStrategy.LOGICAL_EXPIRE);
+        // 3.按请求的顺序返回存在的商铺
+        return Result.ok(new ArrayList<>(shops.values()));
+    }
 
-        return shop;
+    private Map<Long, Shop> listShopByIds(Collection<Long> ids) {
+        return listByIds(ids).stream().collect(Collectors.toMap(Shop::getId, Function.identity()));
     }
 
-    //解决缓存击穿的方法，利用互斥锁解决
-    public Shop queryWithMutex(Long id) {
-        //1.根据id判断 redis 中是否存在商铺
-        String key = CACHE_SHOP_KEY + id;
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        //2.判断缓存是否命中
-        if (StrUtil.isNotBlank(shopJson)) {
-            //3.如果命中，直接返回
-            return JSONUtil.toBean(shopJson, Shop.class);
+    @Override
+    public Result queryShopByType(Integer typeId, Integer current, Double x, Double y) {
+        // 0.页码从 1 开始，否则计算出的分页偏移量是负数
+        if (current == null || current < 1) {
+            return Result.fail("页码必须大于0");
         }
-        if(shopJson != null) {
-            // 说明缓存中有，但是数据库中不存在
-            return null;
+        // 1.判断是否需要根据坐标查询
+        if (x == null || y == null) {
+            // 不需要坐标查询，按数据库查询
+            Page<Shop> page = query()
+                    .eq("type_id", typeId)
+                    .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
+            return Result.ok(page.getRecords());
         }
-        //4.如果没有命中, 需要实现缓存重建
-        // 4.1 获取锁
-        String lockKey = LOCK_SHOP_KEY + id;
-        // 4.2 判断是否获取锁成功
-        boolean isLock = tryLock(lockKey);
-        if (!isLock) {
-            // 4.3 如果没有获取到锁，休眠一段时间后重试
-            try {
-                Thread.sleep(50);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+        // 2.计算分页参数
+        int from = (current - 1) * SystemConstants.DEFAULT_PAGE_SIZE;
+        int end = current * SystemConstants.DEFAULT_PAGE_SIZE;
+        // 3.按照距离排序、分页，结果：shopId、distance，本地空间索引可用时不访问 redis
+        List<Long> ids = new ArrayList<>(SystemConstants.DEFAULT_PAGE_SIZE);
+        Map<Long, Double> distances = new HashMap<>();
+        if (shopSpatialIndex.isEnabled() && shopSpatialIndex.isReady()) {
+            long[] outIds = new long[end];
+            double[] outMeters = new double[end];
+            int n = shopSpatialIndex.nearest(typeId, x, y, ShopGeoIndex.SEARCH_RADIUS_METERS, outIds, outMeters);
+            for (int i = from; i < n; i++) {
+                ids.add(outIds[i]);
+                distances.put(outIds[i], outMeters[i]);
             }
-            //休眠完继续查询，不断循环
-            return queryWithMutex(id);
-        }
-        Shop shop = null;
-        try {
-            // 4.4 如果获取到锁，继续查询数据库
-            // 4.5 查询数据库
-            shop = getById(id);
-            // 模拟重建的延时
-            Thread.sleep(200);
-            // 4.6 判断数据库是否存在
-            // 4.7 如果不存在，返回错误信息
-            if (shop == null) {
-                //6.如果不存在，返回错误信息
-                //防止缓存穿透，将空值存入redis     //注：字符串为空并不等于null
-                stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-                return null;
+        } else {
+            List<GeoResult<RedisGeoCommands.GeoLocation<String>>> results =
+                    shopGeoIndex.search(typeId.longValue(), x, y, from, end);
+            for (GeoResult<RedisGeoCommands.GeoLocation<String>> result : results) {
+                Long shopId = Long.valueOf(result.getContent().getName());
+                ids.add(shopId);
+                distances.put(shopId, result.getDistance().getValue());
             }
-            // 4.8 如果存在，将数据存储到redis中
-            String json = JSONUtil.toJsonStr(shop);
-            stringRedisTemplate.opsForValue().set(key, json,CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        } finally {
-            // 4.9 释放锁
-            unlock(lockKey);
         }
-        // 4.9 返回数据
-        return shop;
+        if (ids.isEmpty()) {
+            // 没有下一页了
+            return Result.ok(Collections.emptyList());
+        }
+        // 5.批量查询商铺缓存，缓存中的对象是共享的，复制后再填入距离
+        Map<Long, Shop> shops = cacheClient.queryBatch(CACHE_SHOP_KEY, ids, Shop.class, this::listShopByIds,
+                CACHE_SHOP_TTL, TimeUnit.MINUTES, CacheStrategy.LOGICAL_EXPIRE);
+        List<Shop> list = new ArrayList<>(shops.size());
+        for (Shop shop : shops.values()) {
+            Shop copy = BeanUtil.copyProperties(shop, Shop.class);
+            copy.setDistance(distances.get(shop.getId()));
+            list.add(copy);
+        }
+        // 6.返回
+        return Result.ok(list);
     }
 
-    // 定义线程池
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
-    //解决缓存穿透的方法
-    public Shop queryWithLogicalExpire(Long id) {
-        //1.根据id判断 redis 中是否存在商铺
-        String key = CACHE_SHOP_KEY + id;
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        //2.判断缓存是否命中
-        if (StrUtil.isNotBlank(shopJson)) {
-            //3.如果命中，判断是否过期
-            RedisData redisData = JSONUtil.toBean(shopJson, RedisData.class);
-            //获取商铺数据
-            Shop shop = JSONUtil.toBean((JSONObject) redisData.getData(), Shop.class);
-            //获取过期时间
-            LocalDateTime expireTime = redisData.getExpireTime();
-            //判断是否过期
-            if (expireTime.isAfter(LocalDateTime.now())) {
-                // 说明没有过期，直接返回
-                return shop;
-            }
-            // 说明过期了，需要进行缓存重建
-            // 4.1 获取锁
-            String lockKey = LOCK_SHOP_KEY + id;
-            // 4.2 判断是否获取锁成功
-            boolean isLock = tryLock(lockKey);
-
-
-            //4.3 如果没有获取锁，则直接返回旧数据
-            if(!isLock) {
-                return shop;
-            }
-            // 4.4 如果获取到锁，则开启独立线程，获取数据库数据，本线程直接返回旧数据
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                try {
-                    // 重建缓存
-                    this.saveShop2Redis(id, 20L);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    unlock(lockKey);
-                }
-            });
-            // 4.5 返回旧数据
-            return shop;
+    @Override
+    public Result queryShopByName(String name, Integer current) {
+        // 0.页码从 1 开始，否则计算出的索引偏移量是负数
+        if (current == null || current < 1) {
+            return Result.fail("页码必须大于0");
         }
-        if(shopJson != null) {
-            // 说明缓存中有，但是数据库中不存在
-            return null;
+        // 1.没有关键字或者索引还没有加载完成时，按数据库分页查询
+        if (StrUtil.isBlank(name) || !shopNameIndex.isReady()) {
+            Page<Shop> page = query()
+                    .like(StrUtil.isNotBlank(name), "name", name)
+                    .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
+            return Result.ok(page.getRecords());
         }
-        //4.如果没有命中，查询数据库
-        Shop shop = getById(id);
-        //5.判断数据库是否存在
-        if (shop == null) {
-            //6.如果不存在，返回错误信息
-            //防止缓存穿透，将空值存入redis     //注：字符串为空并不等于null
-            stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-            return null;
+        // 2.从名称索引查询一页商铺 id，不访问数据库
+        List<Long> ids = shopNameIndex.search(name, (current - 1) * SystemConstants.MAX_PAGE_SIZE,
+                SystemConstants.MAX_PAGE_SIZE);
+        if (ids.isEmpty()) {
+            return Result.ok(Collections.emptyList());
         }
-        //7.如果存在，将数据存储到redis中
-        //将对象转换为json字符串
-        String json = JSONUtil.toJsonStr(shop);
-        stringRedisTemplate.opsForValue().set(key, json,CACHE_SHOP_TTL, TimeUnit.MINUTES);
-
-        return shop;
+        // 3.批量查询商铺缓存，按索引的顺序返回
+        Map<Long, Shop> shops = cacheClient.queryBatch(CACHE_SHOP_KEY, ids, Shop.class, this::listShopByIds,
+                CACHE_SHOP_TTL, TimeUnit.MINUTES, CacheStrategy.LOGICAL_EXPIRE);
+        return Result.ok(new ArrayList<>(shops.values()));
     }
 
-    private boolean tryLock(String key) {
-        // 1.获取锁
-        Boolean success = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS);
-        // 2.判断是否获取锁成功
-        return Boolean.TRUE.equals(success);
-    }
-    private void unlock(String key) {
-        // 1.删除锁
-        stringRedisTemplate.delete(key);
+    @Override
+    public Result saveShop(Shop shop) {
+        // 1.写入数据库
+        save(shop);
+        // 2.加入布隆过滤器，并通知 GEO 索引和本地空间索引
+        shopBloomFilter.add(shop.getId());
+        eventPublisher.publishEvent(new ShopChangedEvent(this, null, shop));
+        // 3.返回店铺id
+        return Result.ok(shop.getId());
     }
 
-
-
     // 将商铺信息存储到 redis 中  // 解决缓存击穿，以逻辑删除的方式
-    public void saveShop2Redis(Long id, Long expireSeconds) throws InterruptedException {
+    public void saveShop2Redis(Long id, Long expireSeconds) {
         // 1.查询商铺数据
         Shop shop = getById(id);
-        // 模拟查询时的延时
-        Thread.sleep(200);
-        // 2.封装逻辑过期时间
-        RedisData redisData = new RedisData();
-        redisData.setData(shop);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(expireSeconds));
-        //3.写入 redis
-        stringRedisTemplate.opsForValue().set(CACHE_SHOP_KEY + id, JSONUtil.toJsonStr(redisData));
+        // 2.写入 redis，并封装逻辑过期时间
+        cacheClient.setWithLogicalExpire(CACHE_SHOP_KEY + id, shop, expireSeconds, TimeUnit.SECONDS);
     }
 
     @Override
     @Transactional  //通过事务保证一致性
     public Result update(Shop shop) {
+        Long id = shop.getId();
+        if (id == null) {
+            return Result.fail("店铺id不能为空");
+        }
         // 1.更新数据库
+        Shop before = getById(id);
         boolean update = updateById(shop);
         if (!update) {
             return Result.fail("更新失败");
         }
-        //2.删除缓存
-        String key = CACHE_SHOP_KEY + shop.getId();
-        stringRedisTemplate.delete(key);
-        //3.返回结果
+        //2.在同一个事务中记录缓存失效，提交后由 CacheOutboxRelay 删除 redis 缓存和所有节点的本地缓存
+        cacheOutboxService.invalidate(CACHE_SHOP_KEY + id);
+        //3.提交后同步 GEO 索引、本地空间索引和名称索引，只修改名称时也要同步
+        eventPublisher.publishEvent(new ShopChangedEvent(this, before, getById(id)));
+        //4.返回结果
         return Result.ok();
     }
 }
@@ -1,11 +1,21 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.crypto.digest.DigestUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopTypeSnapshot;
 import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Resource;
+import java.util.List;
+
 /**
  * <p>
  *  服务实现类
@@ -14,7 +24,44 @@ import org.springframework.stereotype.Service;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> implements IShopTypeService {
 
+    @Resource
+    private ObjectMapper objectMapper;
+
+    // 商铺类型几乎不变，整个列表作为一个快照原子替换
+    private volatile ShopTypeSnapshot snapshot;
+
+    @Override
+    public ShopTypeSnapshot snapshot() {
+        ShopTypeSnapshot current = snapshot;
+        return current != null ? current : refreshSnapshot();
+    }
+
+    @Override
+    @Scheduled(initialDelayString = "${hmdp.shop-type.refresh-interval-ms:60000}",
+            fixedDelayString = "${hmdp.shop-type.refresh-interval-ms:60000}")
+    public synchronized ShopTypeSnapshot refreshSnapshot() {
+        // 1.查询数据库，并按接口返回的格式序列化
+        List<ShopType> types = query().orderByAsc("sort").list();
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(Result.ok(types));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("序列化商铺类型失败", e);
+        }
+        // 2.内容没有变化时保留原来的快照，etag 不变
+        String etag = "\"" + DigestUtil.md5Hex(body) + "\"";
+        ShopTypeSnapshot current = snapshot;
+        if (current != null && current.getEtag().equals(etag)) {
+            return current;
+        }
+        // 3.发布新的快照
+        ShopTypeSnapshot next = new ShopTypeSnapshot(current == null ? 1 : current.getVersion() + 1, etag, types, body);
+        snapshot = next;
+        log.info("商铺类型快照更新，版本：{}，数量：{}", next.getVersion(), types.size());
+        return next;
+    }
 }
@@ -1,23 +1,49 @@
 package com.hmdp.service.impl;
 
-import com.baomidou.mybatisplus.extension.service.IService;
 import com.hmdp.dto.Result;
-import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.dto.VoucherOrderBatchResult;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
+import com.hmdp.service.ISeckillStockBucketService;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.RedisBloomFilter;
 import com.hmdp.utils.RedisIdWorker;
-import com.hmdp.utils.SimpleRedisLock;
+import com.hmdp.utils.SeckillAdmission;
+import com.hmdp.utils.SeckillVoucherTable;
 import com.hmdp.utils.UserHolder;
-import org.springframework.aop.framework.AopContext;
+import com.hmdp.utils.VoucherOrderJournal;
+import com.hmdp.utils.VoucherOrderQueue;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
-import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ROLLBACK_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ROLLBACK_TTL;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_BUCKET_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
 
 /**
  * <p>
@@ -27,6 +53,7 @@ import java.time.LocalDateTime;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, VoucherOrder> implements IVoucherOrderService {
 
@@ -36,79 +63,340 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     private RedisIdWorker redisIdWorker;
     @Resource
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RedisBloomFilter voucherBloomFilter;
+    @Resource
+    private VoucherOrderQueue voucherOrderQueue;
+    @Resource
+    private VoucherOrderJournal voucherOrderJournal;
+    @Resource
+    private SeckillAdmission seckillAdmission;
+    @Resource
+    private ISeckillStockBucketService seckillStockBucketService;
+    @Resource
+    private SeckillVoucherTable seckillVoucherTable;
+    @Value("${hmdp.seckill.insert-batch-size:500}")
+    private int insertBatchSize;
+    // 订单 stream 的最大长度，秒杀脚本写入时近似裁剪
+
+    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+    private static final DefaultRedisScript<Long> SECKILL_BUCKET_SCRIPT;
+    private static final DefaultRedisScript<Long> SECKILL_ROLLBACK_SCRIPT;
+
+    static {
+        SECKILL_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
+        SECKILL_SCRIPT.setResultType(Long.class);
+        SECKILL_BUCKET_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_BUCKET_SCRIPT.setLocation(new ClassPathResource("seckill_bucket.lua"));
+        SECKILL_BUCKET_SCRIPT.setResultType(Long.class);
+        SECKILL_ROLLBACK_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_ROLLBACK_SCRIPT.setLocation(new ClassPathResource("seckill_rollback.lua"));
+        SECKILL_ROLLBACK_SCRIPT.setResultType(Long.class);
+    }
 
     @Override
     public Result seckillVoucher(Long voucherId) {
-        // 1.查询优惠券
-        SeckillVoucher seckillVoucher = seckillVoucherService.getById(voucherId);
-        if (seckillVoucher == null) {
+        // 0.本地已经标记售罄，不访问 redis 和数据库
+        if (seckillAdmission.isSoldOut(voucherId)) {
+            return Result.fail("库存不足");
+        }
+        // 布隆过滤器判断不存在，说明优惠券一定不存在
+        if (!voucherBloomFilter.mightContain(voucherId)) {
             return Result.fail("优惠券不存在");
         }
+        // 1.查询秒杀时间，本地时间表中没有时才查询数据库
+        SeckillVoucherTable.Window window = seckillVoucherTable.get(voucherId);
+        if (window == null) {
+            return Result.fail("优惠券不存在");
+        }
+        long now = System.currentTimeMillis();
         // 2.判断秒杀是否开始
-        if(seckillVoucher.getBeginTime().isAfter(LocalDateTime.now())) {
+        if (!window.isStarted(now)) {
             return Result.fail("秒杀未开始");
         }
         // 3.判断秒杀是否结束
-        if(seckillVoucher.getEndTime().isBefore(LocalDateTime.now()) ) {
+        if (window.isEnded(now)) {
             return Result.fail("秒杀已结束");
         }
-        // 4.判断库存是否充足
-        if(seckillVoucher.getStock() < 1) {
+        // 4.执行 lua 脚本，原子地判断库存和一人一单，并扣减 redis 中的库存
+        // 本节点的令牌用完时直接返回
+        if (!seckillAdmission.tryAcquire(voucherId)) {
             return Result.fail("库存不足");
         }
         Long userId = UserHolder.getUser().getId();
-        // 创建锁对象           // 需要传入用户id，保证每个用户的锁是独立的
-        SimpleRedisLock simpleRedisLock = new SimpleRedisLock("order:" + userId, stringRedisTemplate);
-        // 获取锁
-        boolean isLock = simpleRedisLock.tryLock(1200);
-        // 判断锁是否获取成功
-        if(!isLock) {
-            // 获取锁失败，返回错误信息
-            // 一般失败有两种处理方法，分别是返回错误和重试，此处就是为了防止一个用户下多单，所以不应该重试
-            return Result.fail("不允许重复下单");
-        }
-        // 中间可能出现问题，比如在创建订单时出现异常，导致锁没有释放，故要使用try-finally语句块来释放锁
+        long orderId;
         try {
-            // 获取代理对象
-            IVoucherOrderService proxy = (IVoucherOrderService) AopContext.currentProxy();
-            return proxy.createVoucherOrder(voucherId);
-        } finally {
-            // 释放锁
-            simpleRedisLock.unlock();
+            orderId = redisIdWorker.nextId("order");
+        } catch (RuntimeException e) {
+            // 还没有执行脚本，只需要归还令牌
+            seckillAdmission.release(voucherId);
+            throw e;
+        }
+        String streamKey = voucherOrderQueue.streamKey();
+        int buckets = seckillStockBucketService.bucketCount(voucherId);
+        Long result;
+        // 撤销秒杀时使用的库存 key 和用户 set，库存归还到哪个分桶都可以
+        List<String> rollbackKeys;
+        if (buckets > 1) {
+            // 库存分桶：从用户对应的分桶开始查找有库存的分桶
+            int start = (int) Math.floorMod(userId, (long) buckets);
+            List<String> keys = new ArrayList<>(buckets + 2);
+            for (int i = 0; i < buckets; i++) {
+                keys.add(SECKILL_STOCK_BUCKET_KEY + voucherId + ":" + i);
+            }
+            keys.add(SECKILL_ORDER_KEY + voucherId);
+            if (streamKey != null) {
+                keys.add(streamKey);
+            }
+            result = stringRedisTemplate.execute(SECKILL_BUCKET_SCRIPT, keys, userId.toString(),
+                    String.valueOf(orderId), voucherId.toString(), String.valueOf(buckets), String.valueOf(start));
+            rollbackKeys = Arrays.asList(keys.get(start), SECKILL_ORDER_KEY + voucherId);
+        } else {
+            List<String> keys = streamKey == null
+                    ? Arrays.asList(SECKILL_STOCK_KEY + voucherId, SECKILL_ORDER_KEY + voucherId)
+                    : Arrays.asList(SECKILL_STOCK_KEY + voucherId, SECKILL_ORDER_KEY + voucherId, streamKey);
+            result = stringRedisTemplate.execute(SECKILL_SCRIPT, keys,
+                    userId.toString(), String.valueOf(orderId), voucherId.toString());
+            rollbackKeys = keys.subList(0, 2);
         }
+        int r = result == null ? 1 : result.intValue();
+        if (r != 0) {
+            // 不为 0，代表没有购买资格，归还令牌；库存不足时通知所有节点标记售罄
+            seckillAdmission.release(voucherId);
+            if (r == 1) {
+                seckillAdmission.publishSoldOut(voucherId);
+            }
+            return Result.fail(r == 1 ? "库存不足" : "不能重复下单");
+        }
+        if (streamKey != null) {
+            // 订单已经在脚本中写入 stream
+            return Result.ok(orderId);
+        }
+        // 5.有购买资格，生成订单，先写入预写日志，再放入队列由后台线程写入数据库
+        VoucherOrder voucherOrder = new VoucherOrder();
+        voucherOrder.setId(orderId);
+        voucherOrder.setUserId(userId);
+        voucherOrder.setVoucherId(voucherId);
+        boolean accepted;
+        try {
+            accepted = voucherOrderJournal.append(voucherOrder) && voucherOrderQueue.offer(voucherOrder);
+        } catch (RuntimeException e) {
+            // 脚本已经扣减了库存，出现异常时同样撤销，否则库存和购买资格会一直被占用
+            log.error("订单入队失败，orderId：{}", orderId, e);
+            accepted = false;
+        }
+        if (!accepted) {
+            // 日志写入失败或队列已满，取消订单，归还 redis 中的库存和购买资格
+            rollbackSeckill(voucherId, orderId, userId, rollbackKeys);
+            return Result.fail("系统繁忙，请稍后重试");
+        }
+        // 6.返回订单id
+        return Result.ok(orderId);
     }
 
+    // 撤销已经通过脚本的秒杀：删除预写日志中的订单，归还 redis 中的库存、购买资格和本节点的令牌
+    private void rollbackSeckill(Long voucherId, long orderId, Long userId, List<String> rollbackKeys) {
+        voucherOrderJournal.checkpoint(orderId);
+        stringRedisTemplate.execute(SECKILL_ROLLBACK_SCRIPT, rollbackKeys, userId.toString());
+        // 库存已经归还，清除所有节点的售罄标记
+        seckillAdmission.release(voucherId);
+        seckillAdmission.publishReplenish(voucherId, -1);
+    }
+
+    @Override
     @Transactional
-    public Result createVoucherOrder(Long voucherId) {
-        // 5. 判断用户是否已经购买过
-        Long userId = UserHolder.getUser().getId();
-        int count = query().eq("user_id", userId).eq("voucher_id", voucherId).count();
-        if(count > 0) {
-            return Result.fail("用户已购买");
+    public VoucherOrderBatchResult createVoucherOrders(List<VoucherOrder> voucherOrders) {
+        VoucherOrderBatchResult result = new VoucherOrderBatchResult();
+        if (voucherOrders.isEmpty()) {
+            return result;
         }
-        // 6.扣减库存
-        boolean success = seckillVoucherService.update()
-                .setSql("stock = stock - 1")
+        List<Long> ids = new ArrayList<>(voucherOrders.size());
+        for (VoucherOrder voucherOrder : voucherOrders) {
+            ids.add(voucherOrder.getId());
+        }
+        // 事务提交后，无论是否创建了订单，这些订单都已经处理完成
+        checkpointAfterCommit(ids);
+        // 1.去掉已经写入的订单，消息重复投递时保证幂等
+        Map<Long, VoucherOrder> orders = new LinkedHashMap<>();
+        for (VoucherOrder voucherOrder : voucherOrders) {
+            orders.put(voucherOrder.getId(), voucherOrder);
+        }
+        for (VoucherOrder existing : listByIds(orders.keySet())) {
+            orders.remove(existing.getId());
+            result.getExisting().add(existing.getId());
+        }
+        if (orders.isEmpty()) {
+            return result;
+        }
+        // 2.一人一单：数据库中已有的和这一批中重复的订单
+        Set<Long> userIds = new HashSet<>();
+        Set<Long> voucherIds = new HashSet<>();
+        for (VoucherOrder voucherOrder : orders.values()) {
+            userIds.add(voucherOrder.getUserId());
+            voucherIds.add(voucherOrder.getVoucherId());
+        }
+        Set<String> bought = new HashSet<>();
+        for (VoucherOrder existing : query().select("user_id", "voucher_id")
+                .in("user_id", userIds).in("voucher_id", voucherIds).list()) {
+            bought.add(existing.getUserId() + ":" + existing.getVoucherId());
+        }
+        // 3.按优惠券分组，每个优惠券只扣减一次库存，按优惠券id升序扣减，并发的批次按相同顺序锁定库存行
+        Map<Long, List<VoucherOrder>> groups = new TreeMap<>();
+        for (VoucherOrder voucherOrder : orders.values()) {
+            if (!bought.add(voucherOrder.getUserId() + ":" + voucherOrder.getVoucherId())) {
+                log.error("用户已经购买过，userId：{}，voucherId：{}", voucherOrder.getUserId(), voucherOrder.getVoucherId());
+                result.getRejected().put(voucherOrder.getId(), "重复下单");
+                continue;
+            }
+            groups.computeIfAbsent(voucherOrder.getVoucherId(), k -> new ArrayList<>()).add(voucherOrder);
+        }
+        List<VoucherOrder> accepted = new ArrayList<>(orders.size());
+        groups.forEach((voucherId, group) -> {
+            // 先尝试一次扣减整组，库存不够时每次减半，扣减次数是 log(N) 而不是 N
+            int from = 0;
+            int n = group.size();
+            while (from < group.size() && n > 0) {
+                n = Math.min(n, group.size() - from);
+                if (deductStock(voucherId, n)) {
+                    accepted.addAll(group.subList(from, from + n));
+                    from += n;
+                } else {
+                    n /= 2;
+                }
+            }
+            // 扣不到库存的订单丢弃
+            for (VoucherOrder voucherOrder : group.subList(from, group.size())) {
+                log.error("库存不足，丢弃订单：{}", voucherOrder.getId());
+                result.getRejected().put(voucherOrder.getId(), "库存不足");
+            }
+        });
+        // 4.多行 INSERT 写入订单，没有写入的订单归还已经扣减的库存
+        VoucherOrderBatchResult inserted = insertVoucherOrders(accepted, insertBatchSize);
+        result.getCreated().addAll(inserted.getCreated());
+        result.getExisting().addAll(inserted.getExisting());
+        result.getRejected().putAll(inserted.getRejected());
+        if (inserted.getCreated().size() < accepted.size()) {
+            for (VoucherOrder voucherOrder : accepted) {
+                if (!inserted.getCreated().contains(voucherOrder.getId())) {
+                    restoreStock(voucherOrder.getVoucherId(), voucherOrder.getId());
+                }
+            }
+        }
+        // 5.被拒绝的订单已经通过了秒杀脚本，事务提交后归还 redis 中的库存和购买资格
+        if (!result.getRejected().isEmpty()) {
+            List<VoucherOrder> rejected = new ArrayList<>(result.getRejected().size());
+            for (VoucherOrder voucherOrder : orders.values()) {
+                if (result.getRejected().containsKey(voucherOrder.getId())) {
+                    rejected.add(voucherOrder);
+                }
+            }
+            rollbackAfterCommit(rejected, result.getRejected());
+        }
+        return result;
+    }
+
+    @Override
+    @Transactional
+    public VoucherOrderBatchResult insertVoucherOrders(List<VoucherOrder> voucherOrders, int batchSize) {
+        VoucherOrderBatchResult result = new VoucherOrderBatchResult();
+        for (int from = 0; from < voucherOrders.size(); from += batchSize) {
+            List<VoucherOrder> chunk = voucherOrders.subList(from, Math.min(from + batchSize, voucherOrders.size()));
+            try {
+                getBaseMapper().insertBatch(chunk);
+                for (VoucherOrder voucherOrder : chunk) {
+                    result.getCreated().add(voucherOrder.getId());
+                }
+                continue;
+            } catch (ConcurrencyFailureException e) {
+                // 死锁、锁等待超时时整个事务已经回滚，不能继续写入，交给调用方重试
+                throw e;
+            } catch (DataAccessException e) {
+                // 失败的语句整体回滚，事务中之前的操作仍然有效
+                log.warn("多行写入订单失败，改为逐行写入，订单数：{}，原因：{}", chunk.size(), e.getMessage());
+            }
+            // 逐行写入，找出失败的订单
+            for (VoucherOrder voucherOrder : chunk) {
+                try {
+                    save(voucherOrder);
+                    result.getCreated().add(voucherOrder.getId());
+                } catch (DuplicateKeyException e) {
+                    result.getExisting().add(voucherOrder.getId());
+                } catch (ConcurrencyFailureException e) {
+                    throw e;
+                } catch (DataAccessException e) {
+                    log.error("写入订单失败，orderId：{}", voucherOrder.getId(), e);
+                    result.getRejected().put(voucherOrder.getId(), "写入失败");
+                }
+            }
+        }
+        return result;
+    }
+
+    // 扣减数据库中的库存，库存分桶时按分桶编号升序扣减
+    private boolean deductStock(Long voucherId, int n) {
+        if (seckillStockBucketService.bucketCount(voucherId) > 1) {
+            return seckillStockBucketService.deduct(voucherId, n);
+        }
+        return seckillVoucherService.update()
+                .setSql("stock = stock - " + n)
                 .eq("voucher_id", voucherId)
-                .gt("stock", 0)
+                .ge("stock", n)
                 .update();
-        // 6.1 如果扣减失败，说明库存不足
-        if(!success) {
-            return Result.fail("库存不足");
+    }
+
+    // 归还一个没有写入的订单扣减的库存，库存分桶时归还到 hint 对应的分桶
+    private void restoreStock(Long voucherId, long hint) {
+        if (seckillStockBucketService.bucketCount(voucherId) > 1) {
+            seckillStockBucketService.restore(voucherId, 1, hint);
+            return;
         }
+        seckillVoucherService.update()
+                .setSql("stock = stock + 1")
+                .eq("voucher_id", voucherId)
+                .update();
+    }
 
-        // 7.创建订单
-        VoucherOrder voucherOrder = new VoucherOrder();
-        // 7.1订单id
-        long orderId = redisIdWorker.nextId("order");
-        voucherOrder.setId(orderId);
-        // 7.2用户id
-        voucherOrder.setUserId(userId);
-        // 7.3代金券id
-        voucherOrder.setVoucherId(voucherId);
-        save(voucherOrder);
+    // 事务提交后撤销被拒绝订单的秒杀资格，重复下单的用户已经有别的订单，只归还库存
+    private void rollbackAfterCommit(List<VoucherOrder> rejected, Map<Long, String> reasons) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                Set<Long> voucherIds = new HashSet<>();
+                for (VoucherOrder voucherOrder : rejected) {
+                    Long voucherId = voucherOrder.getVoucherId();
+                    Long userId = voucherOrder.getUserId();
+                    int buckets = seckillStockBucketService.bucketCount(voucherId);
+                    String stockKey = buckets > 1
+                            ? SECKILL_STOCK_BUCKET_KEY + voucherId + ":" + Math.floorMod(userId, (long) buckets)
+                            : SECKILL_STOCK_KEY + voucherId;
+                    List<String> keys = Arrays.asList(stockKey, SECKILL_ORDER_KEY + voucherId,
+                            SECKILL_ROLLBACK_KEY + voucherOrder.getId());
+                    String keepUser = "重复下单".equals(reasons.get(voucherOrder.getId())) ? "1" : "0";
+                    try {
+                        stringRedisTemplate.execute(SECKILL_ROLLBACK_SCRIPT, keys,
+                                userId.toString(), keepUser, SECKILL_ROLLBACK_TTL.toString());
+                        voucherIds.add(voucherId);
+                    } catch (RuntimeException e) {
+                        // 数据库已经提交，这里失败只影响 redis 中的库存
+                        log.error("归还 redis 库存失败，orderId：{}", voucherOrder.getId(), e);
+                    }
+                }
+                // 库存已经归还，清除所有节点的售罄标记
+                for (Long voucherId : voucherIds) {
+                    seckillAdmission.publishReplenish(voucherId, -1);
+                }
+            }
+        });
+    }
 
-        // 7.返回订单id
-        return Result.ok(orderId);
+    // 事务提交后在预写日志中写入检查点，事务回滚时订单留在日志中，下次启动时重放
+    private void checkpointAfterCommit(Collection<Long> orderIds) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                voucherOrderJournal.checkpoint(orderIds);
+            }
+        });
     }
 }
@@ -5,14 +5,29 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.Voucher;
 import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.service.ISeckillStockBucketService;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.HotKeyDetector;
+import com.hmdp.utils.LocalCache;
+import com.hmdp.utils.RedisBloomFilter;
+import com.hmdp.utils.SeckillAdmission;
+import com.hmdp.utils.SeckillVoucherTable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
-import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_BUCKET_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
 
 /**
  * <p>
@@ -25,17 +40,66 @@ import java.util.List;
 @Service
 public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> implements IVoucherService {
 
+    // 商铺优惠券列表在热点副本中的 key
+    private static final String SHOP_VOUCHER_KEY = "voucher:shop:";
+
     @Resource
     private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private RedisBloomFilter voucherBloomFilter;
+    @Resource
+    private RedisBloomFilter shopBloomFilter;
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+    @Resource
+    private LocalCache localCache;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private SeckillAdmission seckillAdmission;
+    @Resource
+    private ISeckillStockBucketService seckillStockBucketService;
+    @Resource
+    private SeckillVoucherTable seckillVoucherTable;
+
+    // 新建秒杀券的库存分桶数，大于 1 时库存拆分到多个 redis key 和多行数据
+    @Value("${hmdp.seckill.stock-buckets:1}")
+    private int stockBuckets;
 
     @Override
     public Result queryVoucherOfShop(Long shopId) {
+        // 商铺不存在，直接返回空列表
+        if (!shopBloomFilter.mightContain(shopId)) {
+            return Result.ok(Collections.emptyList());
+        }
+        // 热点商铺直接返回本地副本
+        String key = SHOP_VOUCHER_KEY + shopId;
+        boolean hot = hotKeyDetector.record(key);
+        if (hot) {
+            List<?> replica = hotKeyDetector.getReplica(key, List.class);
+            if (replica != null) {
+                return Result.ok(replica);
+            }
+        }
         // 查询优惠券信息
         List<Voucher> vouchers = getBaseMapper().queryVoucherOfShop(shopId);
+        if (hot) {
+            hotKeyDetector.putReplica(key, Collections.unmodifiableList(vouchers));
+        }
         // 返回结果
         return Result.ok(vouchers);
     }
 
+    @Override
+    public void addVoucher(Voucher voucher) {
+        // 保存优惠券
+        save(voucher);
+        // 加入布隆过滤器
+        voucherBloomFilter.add(voucher.getId());
+        // 删除所有节点上商铺优惠券列表的副本
+        localCache.publishInvalidate(SHOP_VOUCHER_KEY + voucher.getShopId());
+    }
+
     @Override
     @Transactional
     public void addSeckillVoucher(Voucher voucher) {
@@ -48,6 +112,29 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
+        int buckets = Math.max(1, Math.min(stockBuckets, voucher.getStock()));
+        int[] stocks = buckets > 1 ? seckillStockBucketService.split(voucher.getId(), voucher.getStock(), buckets) : null;
+        // 事务提交后把库存写入 redis，秒杀时由 lua 脚本扣减，并通知所有节点重置售罄标记和令牌、加载秒杀时间
+        // 提交后再加入布隆过滤器，之后开始的重建一定能从数据库查到这张券
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                voucherBloomFilter.add(voucher.getId());
+                if (stocks == null) {
+                    stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucher.getId(), voucher.getStock().toString());
+                } else {
+                    Map<String, String> values = new HashMap<>();
+                    for (int i = 0; i < stocks.length; i++) {
+                        values.put(SECKILL_STOCK_BUCKET_KEY + voucher.getId() + ":" + i, String.valueOf(stocks[i]));
+                    }
+                    stringRedisTemplate.opsForValue().multiSet(values);
+                }
+                seckillAdmission.publishReplenish(voucher.getId(), voucher.getStock());
+                seckillVoucherTable.publishChange(seckillVoucher);
+                // 删除所有节点上商铺优惠券列表的副本，提交前删除时其它节点可能重新加载到没有这张券的列表
+                localCache.publishInvalidate(SHOP_VOUCHER_KEY + voucher.getShopId());
+            }
+        });
     }
 
 
@@ -0,0 +1,146 @@
+package com.hmdp.utils;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 紧凑的二进制编解码器
+ * 数据头部：魔数(1字节) + 格式版本(1字节) + 标志位(1字节) + 结构版本(变长)
+ * 逻辑过期数据在头部之后写入过期时间和重建耗时（格式版本 2 开始），再写入实体数据
+ * 没有注册 BinarySchema 的类型，实体部分仍然使用 json
+ * 不是以魔数开头的数据按旧的 json 格式解析，可以直接替换线上的 json 编解码器
+ */
+public class BinaryCacheCodec implements CacheCodec {
+
+    private static final int MAGIC = 0xCB;
+    private static final int FORMAT_VERSION = 2;
+
+    // 标志位：带逻辑过期时间
+    private static final int FLAG_EXPIRE = 1;
+    // 标志位：实体部分是 json
+    private static final int FLAG_JSON = 1 << 1;
+
+    private final JsonCacheCodec jsonCodec;
+    private final Map<Class<?>, BinarySchema<?>> schemas = new HashMap<>();
+
+    public BinaryCacheCodec(JsonCacheCodec jsonCodec, List<BinarySchema<?>> schemas) {
+        this.jsonCodec = jsonCodec;
+        for (BinarySchema<?> schema : schemas) {
+            this.schemas.put(schema.type(), schema);
+        }
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        BinaryWriter out = new BinaryWriter(256);
+        writeValue(out, value, 0, 0, 0);
+        return out.toByteArray();
+    }
+
+    @Override
+    public <R> R decode(byte[] bytes, Class<R> type) {
+        if (!isBinary(bytes)) {
+            return jsonCodec.decode(bytes, type);
+        }
+        BinaryReader in = new BinaryReader(bytes);
+        Header header = readHeader(in);
+        if ((header.flags & FLAG_EXPIRE) != 0) {
+            // 兼容逻辑过期的数据，跳过过期时间和重建耗时
+            in.readZigZag();
+            if (header.formatVersion >= 2) {
+                in.readVarLong();
+            }
+        }
+        return readValue(in, header, type);
+    }
+
+    @Override
+    public byte[] encodeWithExpire(RedisData redisData) {
+        BinaryWriter out = new BinaryWriter(256);
+        long expireMillis = redisData.getExpireTime().toInstant(ZoneOffset.UTC).toEpochMilli();
+        long deltaMillis = redisData.getDelta() == null ? 0 : redisData.getDelta();
+        writeValue(out, redisData.getData(), FLAG_EXPIRE, expireMillis, deltaMillis);
+        return out.toByteArray();
+    }
+
+    @Override
+    public <R> RedisData decodeWithExpire(byte[] bytes, Class<R> type) {
+        if (!isBinary(bytes)) {
+            return jsonCodec.decodeWithExpire(bytes, type);
+        }
+        BinaryReader in = new BinaryReader(bytes);
+        Header header = readHeader(in);
+        RedisData redisData = new RedisData();
+        if ((header.flags & FLAG_EXPIRE) != 0) {
+            long expireMillis = in.readZigZag();
+            redisData.setExpireTime(LocalDateTime.ofEpochSecond(Math.floorDiv(expireMillis, 1000L),
+                    (int) Math.floorMod(expireMillis, 1000L) * 1000000, ZoneOffset.UTC));
+            if (header.formatVersion >= 2) {
+                redisData.setDelta(in.readVarLong());
+            }
+        }
+        redisData.setData(readValue(in, header, type));
+        return redisData;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeValue(BinaryWriter out, Object value, int flags, long expireMillis, long deltaMillis) {
+        BinarySchema<Object> schema = (BinarySchema<Object>) schemas.get(value.getClass());
+        if (schema == null) {
+            flags |= FLAG_JSON;
+        }
+        out.writeByte(MAGIC).writeByte(FORMAT_VERSION).writeByte(flags)
+                .writeVarLong(schema == null ? 0 : schema.version());
+        if ((flags & FLAG_EXPIRE) != 0) {
+            out.writeZigZag(expireMillis);
+            out.writeVarLong(deltaMillis);
+        }
+        if (schema == null) {
+            out.writeBytes(jsonCodec.encode(value));
+        } else {
+            schema.write(value, out);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> R readValue(BinaryReader in, Header header, Class<R> type) {
+        if ((header.flags & FLAG_JSON) != 0) {
+            return jsonCodec.decode(in.readRemaining(), type);
+        }
+        BinarySchema<R> schema = (BinarySchema<R>) schemas.get(type);
+        if (schema == null) {
+            throw new IllegalStateException("缺少二进制结构定义：" + type.getName());
+        }
+        // 滚动升级时新版本写入的数据，按旧的字段顺序读取会得到错误的数据
+        if (header.schemaVersion > schema.version()) {
+            throw new IllegalStateException("不支持的结构版本：" + type.getName() + "，" + header.schemaVersion);
+        }
+        return schema.read(in, header.schemaVersion);
+    }
+
+    private Header readHeader(BinaryReader in) {
+        in.readByte();
+        int formatVersion = in.readByte();
+        if (formatVersion > FORMAT_VERSION) {
+            throw new IllegalStateException("不支持的缓存格式版本：" + formatVersion);
+        }
+        Header header = new Header();
+        header.formatVersion = formatVersion;
+        header.flags = in.readByte();
+        header.schemaVersion = (int) in.readVarLong();
+        return header;
+    }
+
+    private static boolean isBinary(byte[] bytes) {
+        return bytes.length > 0 && (bytes[0] & 0xFF) == MAGIC;
+    }
+
+    private static class Header {
+        private int formatVersion;
+        private int flags;
+        private int schemaVersion;
+    }
+}
@@ -0,0 +1,72 @@
+package com.hmdp.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * 紧凑二进制格式的读取器，与 BinaryWriter 对应
+ */
+public class BinaryReader {
+
+    private final byte[] buf;
+    private int pos;
+
+    public BinaryReader(byte[] buf) {
+        this.buf = buf;
+    }
+
+    public int readByte() {
+        return buf[pos++] & 0xFF;
+    }
+
+    public long readVarLong() {
+        long v = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf[pos++];
+            v |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return v;
+    }
+
+    public long readZigZag() {
+        long v = readVarLong();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    public long readLong() {
+        long v = 0;
+        for (int i = 0; i < 8; i++) {
+            v = (v << 8) | (buf[pos++] & 0xFF);
+        }
+        return v;
+    }
+
+    public double readDouble() {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    public String readString() {
+        int length = (int) readVarLong();
+        String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+        pos += length;
+        return s;
+    }
+
+    public LocalDateTime readDateTime() {
+        long seconds = readZigZag();
+        int nanos = (int) readVarLong();
+        return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+
+    // 读取剩余的所有字节
+    public byte[] readRemaining() {
+        byte[] bytes = Arrays.copyOfRange(buf, pos, buf.length);
+        pos = buf.length;
+        return bytes;
+    }
+}
@@ -0,0 +1,23 @@
+package com.hmdp.utils;
+
+/**
+ * 某个类型的二进制编码方式，字段按固定顺序写入，不依赖反射
+ * 字段有变化时需要增加 version，并在 read 中兼容旧版本
+ */
+public interface BinarySchema<T> {
+
+    Class<T> type();
+
+    /**
+     * 当前的结构版本，写入时保存在数据头部
+     */
+    int version();
+
+    void write(T value, BinaryWriter out);
+
+    /**
+     * @param in 读取器
+     * @param version 数据写入时的结构版本
+     */
+    T read(BinaryReader in, int version);
+}
@@ -0,0 +1,81 @@
+package com.hmdp.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * 紧凑二进制格式的写入器，整数使用变长编码
+ */
+public class BinaryWriter {
+
+    private byte[] buf;
+    private int pos;
+
+    public BinaryWriter(int initialCapacity) {
+        this.buf = new byte[initialCapacity];
+    }
+
+    public BinaryWriter writeByte(int b) {
+        ensure(1);
+        buf[pos++] = (byte) b;
+        return this;
+    }
+
+    public BinaryWriter writeBytes(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        pos += bytes.length;
+        return this;
+    }
+
+    // 无符号变长整数，每个字节 7 位有效数据
+    public BinaryWriter writeVarLong(long v) {
+        ensure(10);
+        while ((v & ~0x7FL) != 0) {
+            buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[pos++] = (byte) v;
+        return this;
+    }
+
+    // 有符号变长整数，zigzag 编码让小的负数也只占少量字节
+    public BinaryWriter writeZigZag(long v) {
+        return writeVarLong((v << 1) ^ (v >> 63));
+    }
+
+    public BinaryWriter writeLong(long v) {
+        ensure(8);
+        for (int i = 7; i >= 0; i--) {
+            buf[pos++] = (byte) (v >>> (i * 8));
+        }
+        return this;
+    }
+
+    public BinaryWriter writeDouble(double v) {
+        return writeLong(Double.doubleToLongBits(v));
+    }
+
+    public BinaryWriter writeString(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length);
+        return writeBytes(bytes);
+    }
+
+    public BinaryWriter writeDateTime(LocalDateTime time) {
+        writeZigZag(time.toEpochSecond(ZoneOffset.UTC));
+        return writeVarLong(time.getNano());
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, pos);
+    }
+
+    private void ensure(int n) {
+        if (pos + n > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.VoucherOrder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于阻塞队列的秒杀订单队列，单线程逐个取出订单交给库存扣减聚合器，不等待写入结果
+ * 聚合器把一个时间窗口内的订单合并成一批，每个优惠券只扣减一次库存
+ * 队列在内存中，进程崩溃时未处理的订单由预写日志在下次启动时恢复
+ */
+@Slf4j
+@Component
+// 关闭时先处理完队列中的订单，再关闭预写日志
+@DependsOn("voucherOrderJournal")
+@ConditionalOnProperty(name = "hmdp.seckill.queue", havingValue = "blocking", matchIfMissing = true)
+public class BlockingVoucherOrderQueue implements VoucherOrderQueue {
+
+    @Resource
+    private StockDecrementAggregator stockDecrementAggregator;
+
+    private final BlockingQueue<VoucherOrder> orderTasks;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "voucher-order-handler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final LongAdder persisted = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile boolean running = true;
+
+    public BlockingVoucherOrderQueue(@Value("${hmdp.seckill.queue-capacity:1048576}") int capacity) {
+        this.orderTasks = new ArrayBlockingQueue<>(capacity);
+    }
+
+    @PostConstruct
+    public void start() {
+        executor.submit(this::handle);
+    }
+
+    @Override
+    public boolean offer(VoucherOrder voucherOrder) {
+        return orderTasks.offer(voucherOrder);
+    }
+
+    private void handle() {
+        while (running || !orderTasks.isEmpty()) {
+            try {
+                // 1.获取队列中的订单信息
+                VoucherOrder voucherOrder = orderTasks.poll(1, TimeUnit.SECONDS);
+                if (voucherOrder == null) {
+                    continue;
+                }
+                // 2.交给聚合器创建订单，完成后计数
+                stockDecrementAggregator.submit(voucherOrder).whenComplete((created, e) -> {
+                    if (e == null) {
+                        persisted.increment();
+                        return;
+                    }
+                    failed.increment();
+                    log.error("处理订单异常，orderId：{}", voucherOrder.getId(), e);
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                failed.increment();
+                log.error("处理订单异常", e);
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("type", "blocking");
+        stats.put("pending", orderTasks.size());
+        stats.put("persisted", persisted.sum());
+        stats.put("failed", failed.sum());
+        stats.put("aggregator", stockDecrementAggregator.stats());
+        return stats;
+    }
+
+    // 停止接收后处理完队列中剩余的订单
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("订单队列未能在 30 秒内处理完，剩余订单：{}", orderTasks.size());
+            executor.shutdownNow();
+        }
+    }
+}
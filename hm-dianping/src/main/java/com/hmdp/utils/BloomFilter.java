@@ -0,0 +1,129 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 内存中的布隆过滤器，元素为 long 类型的 id
+ * 位的排列方式与 redis bitmap 相同，可以直接与 redis 中的字节互相转换
+ */
+public class BloomFilter {
+
+    private final long numBits;
+    private final int numHashes;
+    private final AtomicLongArray bits;
+
+    /**
+     * @param expectedInsertions 预计的元素数量
+     * @param fpp 期望的误判率
+     */
+    public BloomFilter(long expectedInsertions, double fpp) {
+        if (expectedInsertions <= 0 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("布隆过滤器参数错误");
+        }
+        // m = -n * ln(p) / (ln2)^2, k = m / n * ln2
+        this.numBits = Math.max(64, (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2))));
+        this.numHashes = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * Math.log(2)));
+        this.bits = new AtomicLongArray((int) ((numBits + 63) >>> 6));
+    }
+
+    public long numBits() {
+        return numBits;
+    }
+
+    public int numHashes() {
+        return numHashes;
+    }
+
+    /**
+     * 计算 id 对应的所有位下标，redis 中使用相同的下标
+     */
+    public long[] offsets(long id) {
+        long[] offsets = new long[numHashes];
+        long hash = mix(id);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            long combined = h1 + (long) (i + 1) * h2;
+            offsets[i] = (combined & Long.MAX_VALUE) % numBits;
+        }
+        return offsets;
+    }
+
+    public void put(long id) {
+        for (long offset : offsets(id)) {
+            set(offset);
+        }
+    }
+
+    public boolean mightContain(long id) {
+        for (long offset : offsets(id)) {
+            if (!get(offset)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void set(long offset) {
+        int index = (int) (offset >>> 6);
+        long mask = 1L << (offset & 63);
+        long old;
+        do {
+            old = bits.get(index);
+            if ((old & mask) != 0) {
+                return;
+            }
+        } while (!bits.compareAndSet(index, old, old | mask));
+    }
+
+    public boolean get(long offset) {
+        return (bits.get((int) (offset >>> 6)) & (1L << (offset & 63))) != 0;
+    }
+
+    /**
+     * 转换为 redis bitmap 的字节，redis 中第 i 位是第 i / 8 个字节的从高到低第 i % 8 位
+     */
+    public byte[] toRedisBytes() {
+        byte[] bytes = new byte[(int) ((numBits + 7) >>> 3)];
+        for (int i = 0; i < bits.length(); i++) {
+            long word = bits.get(i);
+            while (word != 0) {
+                long offset = ((long) i << 6) + Long.numberOfTrailingZeros(word);
+                bytes[(int) (offset >>> 3)] |= (byte) (0x80 >>> (offset & 7));
+                word &= word - 1;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 把 redis bitmap 中的位合并到当前过滤器
+     */
+    public void mergeRedisBytes(byte[] bytes) {
+        if (bytes == null) {
+            return;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xFF;
+            for (int j = 0; b != 0 && j < 8; j++) {
+                if ((b & (0x80 >>> j)) != 0) {
+                    long offset = ((long) i << 3) + j;
+                    if (offset < numBits) {
+                        set(offset);
+                    }
+                }
+            }
+        }
+    }
+
+    // murmur3 的 64 位混淆函数，让连续的 id 也能均匀分布
+    private static long mix(long id) {
+        long h = id;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,71 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.List;
+
+import static com.hmdp.utils.RedisBloomFilter.REBUILD_TIMEOUT_SECONDS;
+
+/**
+ * 布隆过滤器的定时任务：启动时加载本地镜像，之后定期从数据库重建
+ * 重建只由抢到锁的一个节点执行，包括启动时 redis 中不存在的情况；其它节点从 redis 重新加载本地镜像
+ * 没有加载成功的过滤器不做拦截，按 load-retry-ms 重试，直到重建的节点写入 redis
+ */
+@Slf4j
+@Component
+public class BloomFilterRefresher {
+
+    @Resource
+    private List<RedisBloomFilter> bloomFilters;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${hmdp.bloom.load-retry-ms:5000}")
+    public void loadMissing() {
+        for (RedisBloomFilter filter : bloomFilters) {
+            if (filter.isReady()) {
+                continue;
+            }
+            try {
+                // redis 中不存在时由抢到锁的节点重建，其它节点下次重试
+                if (!filter.load()) {
+                    rebuildWithLock(filter);
+                }
+            } catch (Exception e) {
+                log.error("加载布隆过滤器失败，key：{}", filter.getKey(), e);
+            }
+        }
+    }
+
+    @Scheduled(initialDelayString = "${hmdp.bloom.rebuild-interval-ms:3600000}",
+            fixedDelayString = "${hmdp.bloom.rebuild-interval-ms:3600000}")
+    public void refresh() {
+        for (RedisBloomFilter filter : bloomFilters) {
+            try {
+                if (!rebuildWithLock(filter)) {
+                    // 其它节点正在重建，重新加载本地镜像
+                    filter.load();
+                }
+            } catch (Exception e) {
+                log.error("刷新布隆过滤器失败，key：{}", filter.getKey(), e);
+            }
+        }
+    }
+
+    private boolean rebuildWithLock(RedisBloomFilter filter) {
+        SimpleRedisLock lock = new SimpleRedisLock(filter.getKey(), stringRedisTemplate);
+        if (!lock.tryLock(REBUILD_TIMEOUT_SECONDS)) {
+            return false;
+        }
+        try {
+            filter.rebuild();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,637 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static com.hmdp.utils.CacheMetrics.*;
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 通用的缓存工具，封装了缓存穿透、互斥锁、逻辑过期三种查询方式
+ * 任何实体只需要提供 key 前缀、id、数据库查询函数和过期时间即可使用
+ */
+@Slf4j
+@Component
+public class CacheClient {
+
+    // 空值标记，用于解决缓存穿透
+    private static final byte[] NULL_VALUE = new byte[0];
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final LocalCache localCache;
+    private final CacheMetrics cacheMetrics;
+    private final CacheCodec cacheCodec;
+    private final HotKeyDetector hotKeyDetector;
+    private final CacheRebuildExecutor cacheRebuildExecutor;
+    private final SingleFlight singleFlight = new SingleFlight();
+    // 过期时间的随机浮动比例，避免同时写入的 key 同时过期
+    private final double expireJitter;
+    // 提前刷新的系数，越大越早刷新，0 表示只在过期后刷新
+    private final double earlyRefreshBeta;
+
+    public CacheClient(StringRedisTemplate stringRedisTemplate, LocalCache localCache, CacheMetrics cacheMetrics,
+                       CacheCodec cacheCodec, HotKeyDetector hotKeyDetector,
+                       CacheRebuildExecutor cacheRebuildExecutor,
+                       @Value("${hmdp.cache.expire-jitter:0.1}") double expireJitter,
+                       @Value("${hmdp.cache.early-refresh-beta:1.0}") double earlyRefreshBeta) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.localCache = localCache;
+        this.cacheMetrics = cacheMetrics;
+        this.cacheCodec = cacheCodec;
+        this.hotKeyDetector = hotKeyDetector;
+        this.cacheRebuildExecutor = cacheRebuildExecutor;
+        this.expireJitter = expireJitter;
+        this.earlyRefreshBeta = earlyRefreshBeta;
+    }
+
+    // 写入缓存，并设置 ttl
+    public void set(String key, Object value, Long time, TimeUnit unit) {
+        setRaw(key, cacheCodec.encode(value), jitterMillis(time, unit), TimeUnit.MILLISECONDS);
+    }
+
+    // 写入缓存，并设置逻辑过期时间
+    public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
+        setWithLogicalExpire(key, value, time, unit, 0);
+    }
+
+    /**
+     * 写入缓存，并设置逻辑过期时间
+     * @param deltaMillis 重建这条数据花费的时间，用于提前刷新
+     */
+    private void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit, long deltaMillis) {
+        setRaw(key, cacheCodec.encodeWithExpire(logicalData(value, time, unit, deltaMillis)));
+    }
+
+    /**
+     * 用管道批量写入缓存，并设置逻辑过期时间，每个 key 的过期时间单独浮动
+     * @param deltaMillis 重建一条数据预计花费的时间，用于提前刷新
+     */
+    public void setBatchWithLogicalExpire(Map<String, ?> values, Long time, TimeUnit unit, long deltaMillis) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            values.forEach((key, value) -> connection.set(toBytes(key),
+                    cacheCodec.encodeWithExpire(logicalData(value, time, unit, deltaMillis))));
+            return null;
+        });
+    }
+
+    private RedisData logicalData(Object value, Long time, TimeUnit unit, long deltaMillis) {
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        redisData.setExpireTime(LocalDateTime.now().plus(jitterMillis(time, unit), ChronoUnit.MILLIS));
+        redisData.setDelta(deltaMillis);
+        return redisData;
+    }
+
+    // 删除 redis 缓存和所有节点的本地缓存
+    public void delete(String key) {
+        stringRedisTemplate.delete(key);
+        localCache.publishInvalidate(key);
+    }
+
+    /**
+     * 批量删除，redis 中只执行一次 DEL
+     */
+    public void delete(Collection<String> keys) {
+        stringRedisTemplate.delete(keys);
+        for (String key : keys) {
+            localCache.publishInvalidate(key);
+        }
+    }
+
+    /**
+     * 按指定策略查询，热点 key 先读取本地副本，再依次查询本地缓存、redis 和数据库
+     * 注意：本地缓存中的对象是共享的，调用方不能修改返回的对象
+     * @param keyPrefix key 前缀
+     * @param id 数据 id
+     * @param type 数据类型
+     * @param dbFallback 查询数据库的函数
+     * @param time 缓存时间
+     * @param unit 时间单位
+     * @param strategy 查询策略
+     * @return 数据，不存在时返回 null
+     */
+    public <R, ID> R query(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback,
+                           Long time, TimeUnit unit, CacheStrategy strategy) {
+        // 1.统计访问次数，热点 key 直接读取本地副本
+        String key = keyPrefix + id;
+        return queryHot(key, type, () -> {
+            // 2.再查询本地缓存
+            long begin = System.nanoTime();
+            R cached = localCache.get(key, type);
+            if (cached != null) {
+                cacheMetrics.recordHit(LEVEL_LOCAL, System.nanoTime() - begin);
+                return cached;
+            }
+            cacheMetrics.recordMiss(LEVEL_LOCAL, System.nanoTime() - begin);
+            // 3.再按策略查询 redis 和数据库
+            R r;
+            switch (strategy) {
+                case MUTEX:
+                    r = mutex(keyPrefix, id, type, dbFallback, time, unit);
+                    break;
+                case LOGICAL_EXPIRE:
+                    r = logicalExpire(keyPrefix, id, type, dbFallback, time, unit);
+                    break;
+                default:
+                    r = passThrough(keyPrefix, id, type, dbFallback, time, unit);
+            }
+            // 4.写入本地缓存
+            localCache.put(key, r);
+            return r;
+        });
+    }
+
+    //解决缓存穿透的方法
+    public <R, ID> R queryWithPassThrough(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback,
+                                          Long time, TimeUnit unit) {
+        return queryHot(keyPrefix + id, type, () -> passThrough(keyPrefix, id, type, dbFallback, time, unit));
+    }
+
+    //解决缓存击穿的方法，利用互斥锁解决
+    public <R, ID> R queryWithMutex(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback,
+                                    Long time, TimeUnit unit) {
+        return queryHot(keyPrefix + id, type, () -> mutex(keyPrefix, id, type, dbFallback, time, unit));
+    }
+
+    //解决缓存击穿的方法，利用逻辑过期解决
+    public <R, ID> R queryWithLogicalExpire(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback,
+                                            Long time, TimeUnit unit) {
+        return queryHot(keyPrefix + id, type, () -> logicalExpire(keyPrefix, id, type, dbFallback, time, unit));
+    }
+
+    // 热点 key 直接读取本地副本，不再访问 redis
+    private <R> R queryHot(String key, Class<R> type, Supplier<R> loader) {
+        boolean hot = hotKeyDetector.record(key);
+        if (hot) {
+            long begin = System.nanoTime();
+            R replica = hotKeyDetector.getReplica(key, type);
+            if (replica != null) {
+                cacheMetrics.recordHit(LEVEL_HOT, System.nanoTime() - begin);
+                return replica;
+            }
+            cacheMetrics.recordMiss(LEVEL_HOT, System.nanoTime() - begin);
+        }
+        R r = loader.get();
+        if (hot) {
+            hotKeyDetector.putReplica(key, r);
+        }
+        return r;
+    }
+
+    private <R, ID> R passThrough(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback,
+                                  Long time, TimeUnit unit) {
+        //1.根据id判断 redis 中是否存在
+        String key = keyPrefix + id;
+        byte[] bytes = getFromRedis(key);
+        //2.判断缓存是否命中
+        if (bytes != null) {
+            //3.如果命中，直接返回，空值说明数据库中不存在
+            if (bytes.length == 0) {
+                return null;
+            }
+            R r = decode(key, bytes, type);
+            if (r != null) {
+                return r;
+            }
+        }
+        //4.如果没有命中或者无法解码，查询数据库
+        R r = loadFromDb(id, dbFallback);
+        //5.写入 redis，不存在时写入空值
+        setOrNull(key, r, time, unit);
+        return r;
+    }
+
+    private <R, ID> R mutex(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback,
+                            Long time, TimeUnit unit) {
+        //1.根据id判断 redis 中是否存在
+        String key = keyPrefix + id;
+        byte[] bytes = getFromRedis(key);
+        //2.判断缓存是否命中
+        if (bytes != null) {
+            if (bytes.length == 0) {
+                return null;
+            }
+            R r = decode(key, bytes, type);
+            if (r != null) {
+                return r;
+            }
+        }
+        //3.如果没有命中或者无法解码，同一个 key 的并发请求在本节点合并为一次重建，其它线程等待重建结果
+        return singleFlight.execute(key, () -> rebuildWithMutex(keyPrefix, id, type, dbFallback, time, unit));
+    }
+
+    // 每个节点只有一个线程会执行这里，与其它节点竞争 redis 互斥锁
+    private <R, ID> R rebuildWithMutex(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback,
+                                       Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        String lockKey = lockKey(keyPrefix, id);
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(LOCK_SHOP_TTL);
+        // 1.获取锁，没有获取到说明其它节点正在重建，等待片刻后检查缓存
+        while (!tryLock(lockKey)) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("缓存重建被中断", e);
+            }
+            byte[] bytes = getFromRedis(key);
+            if (bytes != null && bytes.length == 0) {
+                return null;
+            }
+            R cached = bytes == null ? null : decode(key, bytes, type);
+            if (cached != null) {
+                return cached;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                // 持有锁的节点超时仍未重建，直接查询数据库
+                return loadFromDb(id, dbFallback);
+            }
+        }
+        try {
+            // 2.获取锁成功后再次检查缓存，可能别的节点已经重建完成
+            byte[] bytes = getFromRedis(key);
+            if (bytes != null && bytes.length == 0) {
+                return null;
+            }
+            R cached = bytes == null ? null : decode(key, bytes, type);
+            if (cached != null) {
+                return cached;
+            }
+            // 3.查询数据库并写入 redis
+            R r = loadFromDb(id, dbFallback);
+            setOrNull(key, r, time, unit);
+            return r;
+        } finally {
+            // 4.释放锁
+            unlock(lockKey);
+        }
+    }
+
+    private <R, ID> R logicalExpire(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback,
+                                    Long time, TimeUnit unit) {
+        //1.根据id判断 redis 中是否存在
+        String key = keyPrefix + id;
+        byte[] bytes = getFromRedis(key);
+        //2.如果没有命中，说明还没有预热或者刚被删除，本节点合并为一次查询数据库后写入
+        RedisData redisData = bytes == null || bytes.length == 0 ? null : decodeWithExpire(key, bytes, type);
+        if (bytes == null || (bytes.length > 0 && redisData == null)) {
+            return singleFlight.execute(key, () -> {
+                R r = loadFromDb(id, dbFallback);
+                if (r == null) {
+                    setRaw(key, NULL_VALUE, CACHE_NULL_TTL, TimeUnit.MINUTES);
+                    return null;
+                }
+                setWithLogicalExpire(key, r, time, unit);
+                return r;
+            });
+        }
+        if (bytes.length == 0) {
+            // 说明缓存中有，但是数据库中不存在
+            return null;
+        }
+        //3.如果命中，判断是否过期，快过期时按重建耗时以一定概率提前重建
+        R r = type.cast(redisData.getData());
+        if (!shouldRefresh(redisData)) {
+            // 说明没有过期，直接返回
+            return r;
+        }
+        //4.说明过期了或者需要提前刷新，需要进行缓存重建
+        rebuildAsync(keyPrefix, id, dbFallback, time, unit);
+        //5.返回旧数据
+        return r;
+    }
+
+    /**
+     * 批量查询，语义与 query 相同：先查询本地缓存，再一次 MGET 查询 redis，
+     * 未命中的 id 交给 dbFallback 一次性查询，再用管道一次写回，不存在的 id 写入空值
+     * 批量查询不加互斥锁，MUTEX 按 PASS_THROUGH 处理
+     * @param keyPrefix key 前缀
+     * @param ids id 列表
+     * @param type 数据类型
+     * @param dbFallback 批量查询数据库的函数，返回 id 到数据的映射
+     * @param time 缓存时间
+     * @param unit 时间单位
+     * @param strategy 查询策略，LOGICAL_EXPIRE 时过期的数据先返回旧值，再异步重建
+     * @return id 到数据的映射，按 ids 的顺序排列，不存在的 id 不包含在内
+     */
+    public <R, ID> Map<ID, R> queryBatch(String keyPrefix, List<ID> ids, Class<R> type,
+                                         Function<List<ID>, Map<ID, R>> dbFallback, Long time, TimeUnit unit,
+                                         CacheStrategy strategy) {
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        boolean logical = strategy == CacheStrategy.LOGICAL_EXPIRE;
+        Map<ID, R> found = new LinkedHashMap<>();
+        //1.热点 key 先读取本地副本，再查询本地缓存
+        List<ID> remoteIds = new ArrayList<>();
+        List<ID> hotIds = new ArrayList<>();
+        for (ID id : ids) {
+            String key = keyPrefix + id;
+            if (hotKeyDetector.record(key)) {
+                long begin = System.nanoTime();
+                R replica = hotKeyDetector.getReplica(key, type);
+                if (replica != null) {
+                    cacheMetrics.recordHit(LEVEL_HOT, System.nanoTime() - begin);
+                    found.put(id, replica);
+                    continue;
+                }
+                cacheMetrics.recordMiss(LEVEL_HOT, System.nanoTime() - begin);
+                hotIds.add(id);
+            }
+            long begin = System.nanoTime();
+            R cached = localCache.get(key, type);
+            if (cached != null) {
+                cacheMetrics.recordHit(LEVEL_LOCAL, System.nanoTime() - begin);
+                found.put(id, cached);
+            } else {
+                cacheMetrics.recordMiss(LEVEL_LOCAL, System.nanoTime() - begin);
+                remoteIds.add(id);
+            }
+        }
+        if (remoteIds.isEmpty()) {
+            return sortAndReplicate(keyPrefix, ids, hotIds, found);
+        }
+        //2.一次 MGET 查询 redis
+        byte[][] keys = new byte[remoteIds.size()][];
+        for (int i = 0; i < remoteIds.size(); i++) {
+            keys[i] = toBytes(keyPrefix + remoteIds.get(i));
+        }
+        long begin = System.nanoTime();
+        List<byte[]> values = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.mGet(keys));
+        long nanos = (System.nanoTime() - begin) / remoteIds.size();
+        //3.解析命中的数据，收集未命中的 id，逻辑过期的数据返回旧值并异步重建
+        List<ID> missIds = new ArrayList<>();
+        for (int i = 0; i < remoteIds.size(); i++) {
+            ID id = remoteIds.get(i);
+            byte[] bytes = values == null ? null : values.get(i);
+            if (bytes == null) {
+                cacheMetrics.recordMiss(LEVEL_REDIS, nanos);
+                missIds.add(id);
+                continue;
+            }
+            cacheMetrics.recordHit(LEVEL_REDIS, nanos);
+            if (bytes.length == 0) {
+                // 说明缓存中有，但是数据库中不存在
+                continue;
+            }
+            String key = keyPrefix + id;
+            R r;
+            if (logical) {
+                RedisData redisData = decodeWithExpire(key, bytes, type);
+                if (redisData == null) {
+                    missIds.add(id);
+                    continue;
+                }
+                r = type.cast(redisData.getData());
+                if (shouldRefresh(redisData)) {
+                    rebuildAsync(keyPrefix, id, single -> dbFallback.apply(Collections.singletonList(single)).get(single),
+                            time, unit);
+                }
+            } else {
+                r = decode(key, bytes, type);
+                if (r == null) {
+                    missIds.add(id);
+                    continue;
+                }
+            }
+            localCache.put(key, r);
+            found.put(id, r);
+        }
+        if (missIds.isEmpty()) {
+            return sortAndReplicate(keyPrefix, ids, hotIds, found);
+        }
+        //4.未命中的数据一次性查询数据库
+        begin = System.nanoTime();
+        Map<ID, R> loaded = dbFallback.apply(missIds);
+        long loadNanos = System.nanoTime() - begin;
+        long loadMillis = TimeUnit.NANOSECONDS.toMillis(loadNanos);
+        //与 loadFromDb 相同，查到数据记为数据库命中，不存在的 id 记为未命中
+        for (ID id : missIds) {
+            if (loaded.get(id) != null) {
+                cacheMetrics.recordHit(LEVEL_DB, loadNanos / missIds.size());
+            } else {
+                cacheMetrics.recordMiss(LEVEL_DB, loadNanos / missIds.size());
+            }
+        }
+        //5.用管道一次性写回 redis，不存在的 id 写入空值
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (ID id : missIds) {
+                R r = loaded.get(id);
+                byte[] key = toBytes(keyPrefix + id);
+                if (r == null) {
+                    connection.set(key, NULL_VALUE, Expiration.from(CACHE_NULL_TTL, TimeUnit.MINUTES),
+                            RedisStringCommands.SetOption.UPSERT);
+                } else if (logical) {
+                    connection.set(key, cacheCodec.encodeWithExpire(logicalData(r, time, unit, loadMillis)));
+                } else {
+                    connection.set(key, cacheCodec.encode(r), Expiration.milliseconds(jitterMillis(time, unit)),
+                            RedisStringCommands.SetOption.UPSERT);
+                }
+            }
+            return null;
+        });
+        for (ID id : missIds) {
+            R r = loaded.get(id);
+            if (r != null) {
+                localCache.put(keyPrefix + id, r);
+                found.put(id, r);
+            }
+        }
+        return sortAndReplicate(keyPrefix, ids, hotIds, found);
+    }
+
+    private <R, ID> void rebuildAsync(String keyPrefix, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        // 提交到重建线程池，本节点同一个 key 只会提交一次，队列满时放弃重建，继续返回旧数据
+        cacheRebuildExecutor.submit(keyPrefix + id, () -> {
+            // 获取锁，没有获取到说明其它节点在重建
+            String lockKey = lockKey(keyPrefix, id);
+            if (!tryLock(lockKey)) {
+                return;
+            }
+            try {
+                long begin = System.currentTimeMillis();
+                R r = loadFromDb(id, dbFallback);
+                if (r == null) {
+                    setRaw(keyPrefix + id, NULL_VALUE, CACHE_NULL_TTL, TimeUnit.MINUTES);
+                } else {
+                    // 记录重建耗时，重建越慢越要提前刷新
+                    setWithLogicalExpire(keyPrefix + id, r, time, unit, System.currentTimeMillis() - begin);
+                }
+            } finally {
+                unlock(lockKey);
+            }
+        });
+    }
+
+    // 判断逻辑过期的数据是否需要重建
+    private boolean shouldRefresh(RedisData redisData) {
+        long expireMillis = redisData.getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long deltaMillis = redisData.getDelta() == null ? 0 : redisData.getDelta();
+        return shouldRefresh(System.currentTimeMillis(), expireMillis, deltaMillis, earlyRefreshBeta,
+                ThreadLocalRandom.current().nextDouble());
+    }
+
+    /**
+     * XFetch 提前刷新：now - delta * beta * ln(random) >= expire 时重建
+     * ln(random) 是负数，越接近过期、重建越慢，提前重建的概率越大，刷新请求在时间上自然分散
+     * @param random (0, 1] 之间的随机数
+     */
+    static boolean shouldRefresh(long nowMillis, long expireMillis, long deltaMillis, double beta, double random) {
+        if (nowMillis >= expireMillis) {
+            return true;
+        }
+        if (deltaMillis <= 0 || beta <= 0 || random <= 0) {
+            return false;
+        }
+        return nowMillis - deltaMillis * beta * Math.log(random) >= expireMillis;
+    }
+
+    // 在过期时间上增加 ±expireJitter 的随机浮动
+    private long jitterMillis(Long time, TimeUnit unit) {
+        long millis = unit.toMillis(time);
+        if (expireJitter <= 0) {
+            return millis;
+        }
+        double factor = 1 + expireJitter * (ThreadLocalRandom.current().nextDouble() * 2 - 1);
+        return Math.max(1, (long) (millis * factor));
+    }
+
+    // 按 ids 的顺序排列，同时把热点 key 的结果写入本地副本
+    private <R, ID> Map<ID, R> sortAndReplicate(String keyPrefix, List<ID> ids, List<ID> hotIds, Map<ID, R> found) {
+        for (ID id : hotIds) {
+            hotKeyDetector.putReplica(keyPrefix + id, found.get(id));
+        }
+        return sortByIds(ids, found);
+    }
+
+    private <R, ID> Map<ID, R> sortByIds(List<ID> ids, Map<ID, R> found) {
+        Map<ID, R> result = new LinkedHashMap<>(found.size());
+        for (ID id : ids) {
+            R r = found.get(id);
+            if (r != null) {
+                result.put(id, r);
+            }
+        }
+        return result;
+    }
+
+    private void setOrNull(String key, Object value, Long time, TimeUnit unit) {
+        if (value == null) {
+            //防止缓存穿透，将空值存入redis
+            setRaw(key, NULL_VALUE, CACHE_NULL_TTL, TimeUnit.MINUTES);
+            return;
+        }
+        set(key, value, time, unit);
+    }
+
+    /**
+     * 解码 redis 中的值，无法解码时（格式版本更新、缺少结构定义或者数据损坏）删除这个 key 并返回 null，
+     * 调用方按未命中处理，从数据库查询后重新写入
+     */
+    private <R> R decode(String key, byte[] bytes, Class<R> type) {
+        try {
+            return cacheCodec.decode(bytes, type);
+        } catch (RuntimeException e) {
+            evictUndecodable(key, e);
+            return null;
+        }
+    }
+
+    // 没有逻辑过期时间或者数据的值（例如旧版本写入的普通 JSON）同样按无法解码处理
+    private <R> RedisData decodeWithExpire(String key, byte[] bytes, Class<R> type) {
+        RedisData redisData;
+        try {
+            redisData = cacheCodec.decodeWithExpire(bytes, type);
+        } catch (RuntimeException e) {
+            evictUndecodable(key, e);
+            return null;
+        }
+        if (redisData == null || redisData.getExpireTime() == null || redisData.getData() == null) {
+            evictUndecodable(key, new IllegalStateException("缓存缺少逻辑过期时间或数据"));
+            return null;
+        }
+        return redisData;
+    }
+
+    private void evictUndecodable(String key, RuntimeException e) {
+        log.warn("缓存无法解码，按未命中处理，key：{}", key, e);
+        try {
+            stringRedisTemplate.delete(key);
+        } catch (RuntimeException deleteError) {
+            // 删除失败时由之后查询数据库的结果覆盖
+            log.warn("删除无法解码的缓存失败，key：{}", key, deleteError);
+        }
+    }
+
+    // 查询 redis，并记录 redis 层的命中情况
+    private byte[] getFromRedis(String key) {
+        long begin = System.nanoTime();
+        byte[] bytes = stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(toBytes(key)));
+        if (bytes != null) {
+            cacheMetrics.recordHit(LEVEL_REDIS, System.nanoTime() - begin);
+        } else {
+            cacheMetrics.recordMiss(LEVEL_REDIS, System.nanoTime() - begin);
+        }
+        return bytes;
+    }
+
+    // 查询数据库，并记录数据库层的耗时
+    private <R, ID> R loadFromDb(ID id, Function<ID, R> dbFallback) {
+        long begin = System.nanoTime();
+        R r = dbFallback.apply(id);
+        if (r != null) {
+            cacheMetrics.recordHit(LEVEL_DB, System.nanoTime() - begin);
+        } else {
+            cacheMetrics.recordMiss(LEVEL_DB, System.nanoTime() - begin);
+        }
+        return r;
+    }
+
+    private void setRaw(String key, byte[] value, long time, TimeUnit unit) {
+        stringRedisTemplate.execute((RedisCallback<Boolean>) connection -> connection.set(
+                toBytes(key), value, Expiration.from(time, unit), RedisStringCommands.SetOption.UPSERT));
+    }
+
+    private void setRaw(String key, byte[] value) {
+        stringRedisTemplate.execute((RedisCallback<Boolean>) connection -> connection.set(toBytes(key), value));
+    }
+
+    // 锁的 key 与缓存 key 对应，例如 cache:shop: 对应 lock:shop:
+    private String lockKey(String keyPrefix, Object id) {
+        return LOCK_KEY_PREFIX + StrUtil.removePrefix(keyPrefix, CACHE_KEY_PREFIX) + id;
+    }
+
+    private boolean tryLock(String key) {
+        Boolean success = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", LOCK_SHOP_TTL, TimeUnit.SECONDS);
+        return Boolean.TRUE.equals(success);
+    }
+
+    private void unlock(String key) {
+        stringRedisTemplate.delete(key);
+    }
+
+    private static byte[] toBytes(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,37 @@
+package com.hmdp.utils;
+
+/**
+ * 缓存值的编解码器，负责对象与 redis 中字节数据之间的转换
+ */
+public interface CacheCodec {
+
+    /**
+     * 编码普通缓存值
+     * @param value 要缓存的对象
+     * @return 写入 redis 的字节
+     */
+    byte[] encode(Object value);
+
+    /**
+     * 解码普通缓存值
+     * @param bytes redis 中读出的字节
+     * @param type 对象类型
+     * @return 解码后的对象
+     */
+    <R> R decode(byte[] bytes, Class<R> type);
+
+    /**
+     * 编码带逻辑过期时间的缓存值
+     * @param redisData 逻辑过期数据
+     * @return 写入 redis 的字节
+     */
+    byte[] encodeWithExpire(RedisData redisData);
+
+    /**
+     * 解码带逻辑过期时间的缓存值
+     * @param bytes redis 中读出的字节
+     * @param type data 字段的对象类型
+     * @return 逻辑过期数据，data 字段已经转换为 type 类型
+     */
+    <R> RedisData decodeWithExpire(byte[] bytes, Class<R> type);
+}
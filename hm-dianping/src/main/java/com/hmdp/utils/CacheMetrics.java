@@ -0,0 +1,71 @@
+package com.hmdp.utils;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 多级缓存的命中率与耗时统计，按缓存层级（本地、热点副本、redis、数据库）分别记录
+ */
+@Component
+public class CacheMetrics {
+
+    public static final String LEVEL_LOCAL = "local";
+    public static final String LEVEL_HOT = "hot";
+    public static final String LEVEL_REDIS = "redis";
+    public static final String LEVEL_DB = "db";
+
+    private final Map<String, LevelStats> levels = new ConcurrentHashMap<>();
+
+    /**
+     * 记录一次命中
+     * @param level 缓存层级
+     * @param nanos 本次查询耗时，纳秒
+     */
+    public void recordHit(String level, long nanos) {
+        LevelStats stats = stats(level);
+        stats.hits.increment();
+        stats.nanos.add(nanos);
+    }
+
+    /**
+     * 记录一次未命中
+     * @param level 缓存层级
+     * @param nanos 本次查询耗时，纳秒
+     */
+    public void recordMiss(String level, long nanos) {
+        LevelStats stats = stats(level);
+        stats.misses.increment();
+        stats.nanos.add(nanos);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        levels.forEach((level, stats) -> {
+            long hits = stats.hits.sum();
+            long misses = stats.misses.sum();
+            long total = hits + misses;
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("hits", hits);
+            item.put("misses", misses);
+            item.put("hitRatio", total == 0 ? 0D : (double) hits / total);
+            item.put("avgMicros", total == 0 ? 0D : (double) TimeUnit.NANOSECONDS.toMicros(stats.nanos.sum()) / total);
+            result.put(level, item);
+        });
+        return result;
+    }
+
+    private LevelStats stats(String level) {
+        return levels.computeIfAbsent(level, k -> new LevelStats());
+    }
+
+    private static class LevelStats {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+    }
+}
@@ -0,0 +1,156 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.CacheOutbox;
+import com.hmdp.service.ICacheOutboxService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 缓存失效中继：事务提交后批量处理 tb_cache_outbox 中的记录
+ * 每条记录删除两次，第一次在提交后立即删除，第二次延迟一段时间后删除，
+ * 清除提交前被并发读请求写回的旧数据；删除失败时按指数退避重试
+ * 所有处理都在同一个线程中执行，多个节点重复删除同一个 key 没有副作用
+ */
+@Slf4j
+@Component
+public class CacheOutboxRelay {
+
+    @Resource
+    private ICacheOutboxService cacheOutboxService;
+    @Resource
+    private CacheClient cacheClient;
+
+    @Value("${hmdp.cache.outbox.batch-size:200}")
+    private int batchSize;
+    @Value("${hmdp.cache.outbox.second-delete-delay-ms:1000}")
+    private long secondDeleteDelayMillis;
+    @Value("${hmdp.cache.outbox.poll-interval-ms:1000}")
+    private long pollIntervalMillis;
+    @Value("${hmdp.cache.outbox.max-retries:10}")
+    private int maxRetries;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cache-outbox-relay");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // 合并多次唤醒，队列中最多只有一个待执行的立即处理任务
+    private final AtomicBoolean wakeUpPending = new AtomicBoolean();
+
+    @PostConstruct
+    public void start() {
+        // 定时兜底：处理延迟双删、重试，以及提交后还没来得及处理就宕机的记录
+        executor.scheduleWithFixedDelay(this::safeRelay, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 事务提交后调用，立即处理到期的记录
+     */
+    public void wakeUp() {
+        if (wakeUpPending.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                wakeUpPending.set(false);
+                safeRelay();
+            });
+        }
+    }
+
+    private void safeRelay() {
+        try {
+            // 一批处理满了说明还有积压，继续处理
+            while (relayBatch() >= batchSize) {
+                log.debug("缓存失效记录积压，继续处理");
+            }
+        } catch (Exception e) {
+            log.error("处理缓存失效记录失败", e);
+        }
+    }
+
+    /**
+     * 处理一批到期的记录
+     * @return 本批处理的记录数
+     */
+    int relayBatch() {
+        // 1.查询到期的记录
+        LocalDateTime now = LocalDateTime.now();
+        List<CacheOutbox> records = cacheOutboxService.query()
+                .in("status", CacheOutbox.STATUS_PENDING, CacheOutbox.STATUS_DELAYED)
+                .le("next_time", now)
+                .orderByAsc("id")
+                .last("limit " + batchSize)
+                .list();
+        if (records.isEmpty()) {
+            return 0;
+        }
+        // 2.一次性删除本批所有的 key
+        Set<String> keys = new LinkedHashSet<>();
+        for (CacheOutbox record : records) {
+            keys.add(record.getCacheKey());
+        }
+        try {
+            cacheClient.delete(keys);
+        } catch (Exception e) {
+            log.warn("删除缓存失败，等待重试，数量：{}", keys.size(), e);
+            retry(records);
+            return records.size();
+        }
+        // 3.第一次删除完成的记录等待延迟双删，第二次删除完成的记录直接移除
+        List<Long> firstDeleted = new ArrayList<>();
+        List<Long> secondDeleted = new ArrayList<>();
+        for (CacheOutbox record : records) {
+            if (record.getStatus() == CacheOutbox.STATUS_PENDING) {
+                firstDeleted.add(record.getId());
+            } else {
+                secondDeleted.add(record.getId());
+            }
+        }
+        if (!firstDeleted.isEmpty()) {
+            cacheOutboxService.update()
+                    .set("status", CacheOutbox.STATUS_DELAYED)
+                    .set("next_time", LocalDateTime.now().plusNanos(TimeUnit.MILLISECONDS.toNanos(secondDeleteDelayMillis)))
+                    .in("id", firstDeleted)
+                    .update();
+        }
+        if (!secondDeleted.isEmpty()) {
+            cacheOutboxService.removeByIds(secondDeleted);
+        }
+        return records.size();
+    }
+
+    private void retry(List<CacheOutbox> records) {
+        LocalDateTime now = LocalDateTime.now();
+        for (CacheOutbox record : records) {
+            int retryCount = record.getRetryCount() + 1;
+            CacheOutbox update = new CacheOutbox().setId(record.getId()).setRetryCount(retryCount);
+            if (retryCount >= maxRetries) {
+                update.setStatus(CacheOutbox.STATUS_FAILED);
+                log.error("缓存删除重试次数用完，key：{}", record.getCacheKey());
+            } else {
+                // 指数退避，最多等待 64 个间隔
+                long delay = pollIntervalMillis << Math.min(retryCount, 6);
+                update.setNextTime(now.plusNanos(TimeUnit.MILLISECONDS.toNanos(delay)));
+            }
+            cacheOutboxService.updateById(update);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+}
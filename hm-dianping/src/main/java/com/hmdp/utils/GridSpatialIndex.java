@@ -0,0 +1,357 @@
+package com.hmdp.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 内存中的网格空间索引，按经纬度把平面切成固定大小的格子，每个分区（商铺类型）单独一套网格
+ * 坐标保存在基本类型数组中，格子里只保存数组下标，查询时不为候选点创建对象
+ * 距离使用与 redis GEO 相同的 haversine 公式和地球半径，单位米
+ */
+public class GridSpatialIndex {
+
+    // 与 redis geohelper.c 中的地球半径相同
+    private static final double EARTH_RADIUS_METERS = 6372797.560856;
+    // 纬度方向 1 度对应的米数
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * EARTH_RADIUS_METERS;
+
+    private final double cellDegrees;
+    private final Map<Long, Partition> partitions = new ConcurrentHashMap<>();
+    // id 所在的分区
+    private final Map<Long, Long> partitionOf = new ConcurrentHashMap<>();
+
+    /**
+     * @param cellDegrees 格子的边长，单位度，0.01 度约 1.1 公里
+     */
+    public GridSpatialIndex(double cellDegrees) {
+        if (cellDegrees <= 0) {
+            throw new IllegalArgumentException("格子大小必须大于 0");
+        }
+        this.cellDegrees = cellDegrees;
+    }
+
+    /**
+     * 写入或移动一个点，id 已经存在于其它分区时先从原分区删除
+     * 同一个 id 的写入和删除在 partitionOf 中串行执行，只锁定原分区和新分区
+     */
+    public void put(long partition, long id, double x, double y) {
+        Partition target = partitions.computeIfAbsent(partition, k -> new Partition());
+        partitionOf.compute(id, (k, old) -> {
+            if (old != null && old != partition) {
+                partitions.get(old).remove(id);
+            }
+            target.put(id, x, y);
+            return partition;
+        });
+    }
+
+    /**
+     * 删除一个点
+     */
+    public void remove(long id) {
+        partitionOf.computeIfPresent(id, (k, old) -> {
+            partitions.get(old).remove(id);
+            return null;
+        });
+    }
+
+    public int size(long partition) {
+        Partition p = partitions.get(partition);
+        return p == null ? 0 : p.size();
+    }
+
+    /**
+     * 按距离由近到远查询，最多返回 outIds.length 个点
+     * @param partition 分区
+     * @param x 经度
+     * @param y 纬度
+     * @param maxMeters 最大距离，不限制时传 Double.POSITIVE_INFINITY
+     * @param outIds 返回的 id
+     * @param outMeters 返回的距离，长度不能小于 outIds
+     * @return 返回的数量
+     */
+    public int nearest(long partition, double x, double y, double maxMeters, long[] outIds, double[] outMeters) {
+        Partition p = partitions.get(partition);
+        if (p == null || outIds.length == 0) {
+            return 0;
+        }
+        return p.nearest(x, y, maxMeters, outIds, outMeters);
+    }
+
+    static double distance(double x1, double y1, double x2, double y2) {
+        double lat1 = Math.toRadians(y1);
+        double lat2 = Math.toRadians(y2);
+        double u = Math.sin((lat2 - lat1) / 2);
+        double v = Math.sin(Math.toRadians(x2 - x1) / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.sqrt(u * u + Math.cos(lat1) * Math.cos(lat2) * v * v));
+    }
+
+    private long cellX(double x) {
+        return (long) Math.floor(x / cellDegrees);
+    }
+
+    private long cellY(double y) {
+        return (long) Math.floor(y / cellDegrees);
+    }
+
+    private static long cellKey(long cx, long cy) {
+        return (cx << 32) ^ (cy & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 一个分区的数据，读多写少，用读写锁保护
+     */
+    private class Partition {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        // 下标到坐标和 id
+        private long[] ids = new long[16];
+        private double[] xs = new double[16];
+        private double[] ys = new double[16];
+        private long[] cells = new long[16];
+        private int count;
+        // id 到下标
+        private final Map<Long, Integer> slots = new HashMap<>();
+        // 格子到下标列表
+        private final Map<Long, IntList> grid = new HashMap<>();
+        // 已经使用的格子范围，用于结束环形搜索
+        private long minCx = Long.MAX_VALUE, maxCx = Long.MIN_VALUE, minCy = Long.MAX_VALUE, maxCy = Long.MIN_VALUE;
+
+        int size() {
+            lock.readLock().lock();
+            try {
+                return count;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void put(long id, double x, double y) {
+            long cx = cellX(x);
+            long cy = cellY(y);
+            long cell = cellKey(cx, cy);
+            lock.writeLock().lock();
+            try {
+                Integer slot = slots.get(id);
+                if (slot != null) {
+                    xs[slot] = x;
+                    ys[slot] = y;
+                    if (cells[slot] == cell) {
+                        return;
+                    }
+                    removeFromCell(cells[slot], slot);
+                } else {
+                    ensureCapacity(count + 1);
+                    slot = count++;
+                    ids[slot] = id;
+                    xs[slot] = x;
+                    ys[slot] = y;
+                    slots.put(id, slot);
+                }
+                cells[slot] = cell;
+                grid.computeIfAbsent(cell, k -> new IntList()).add(slot);
+                minCx = Math.min(minCx, cx);
+                maxCx = Math.max(maxCx, cx);
+                minCy = Math.min(minCy, cy);
+                maxCy = Math.max(maxCy, cy);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void remove(long id) {
+            lock.writeLock().lock();
+            try {
+                Integer slot = slots.remove(id);
+                if (slot == null) {
+                    return;
+                }
+                removeFromCell(cells[slot], slot);
+                // 把最后一个元素移动到空出的位置，保持数组紧凑
+                int last = --count;
+                if (slot != last) {
+                    ids[slot] = ids[last];
+                    xs[slot] = xs[last];
+                    ys[slot] = ys[last];
+                    cells[slot] = cells[last];
+                    slots.put(ids[slot], slot);
+                    IntList list = grid.get(cells[slot]);
+                    list.replace(last, slot);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void removeFromCell(long cell, int slot) {
+            IntList list = grid.get(cell);
+            list.remove(slot);
+            if (list.size == 0) {
+                grid.remove(cell);
+            }
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= ids.length) {
+                return;
+            }
+            int newCapacity = Math.max(capacity, ids.length * 2);
+            ids = Arrays.copyOf(ids, newCapacity);
+            xs = Arrays.copyOf(xs, newCapacity);
+            ys = Arrays.copyOf(ys, newCapacity);
+            cells = Arrays.copyOf(cells, newCapacity);
+        }
+
+        /**
+         * 从查询点所在的格子开始一圈一圈向外扫描，结果保存在以距离为键的最大堆中
+         * 第 r 圈之外的点距离至少为 r 个格子的宽度，堆已满且堆顶不超过这个距离时停止
+         */
+        int nearest(double x, double y, double maxMeters, long[] outIds, double[] outMeters) {
+            int k = outIds.length;
+            int[] heapSlots = new int[k];
+            double[] heapMeters = new double[k];
+            int size = 0;
+            long cx = cellX(x);
+            long cy = cellY(y);
+            lock.readLock().lock();
+            try {
+                if (count == 0) {
+                    return 0;
+                }
+                long maxRing = Math.max(Math.max(cx - minCx, maxCx - cx), Math.max(cy - minCy, maxCy - cy));
+                for (long r = 0; r <= maxRing; r++) {
+                    // 1.扫描第 r 圈的格子
+                    // 超出已使用范围的格子一定是空的，不需要扫描
+                    for (long i = Math.max(cx - r, minCx), iEnd = Math.min(cx + r, maxCx); i <= iEnd; i++) {
+                        for (long j = Math.max(cy - r, minCy), jEnd = Math.min(cy + r, maxCy); j <= jEnd; j++) {
+                            if (i != cx - r && i != cx + r && j != cy - r && j != cy + r) {
+                                // 内部的格子已经扫描过，直接跳到这一列的最后一个格子
+                                j = cy + r - 1;
+                                continue;
+                            }
+                            IntList list = grid.get(cellKey(i, j));
+                            if (list == null) {
+                                continue;
+                            }
+                            for (int n = 0; n < list.size; n++) {
+                                int slot = list.values[n];
+                                double meters = distance(x, y, xs[slot], ys[slot]);
+                                if (meters > maxMeters) {
+                                    continue;
+                                }
+                                if (size < k) {
+                                    heapMeters[size] = meters;
+                                    heapSlots[size] = slot;
+                                    siftUp(heapMeters, heapSlots, size++);
+                                } else if (meters < heapMeters[0]) {
+                                    heapMeters[0] = meters;
+                                    heapSlots[0] = slot;
+                                    siftDown(heapMeters, heapSlots, size);
+                                }
+                            }
+                        }
+                    }
+                    // 2.判断外面的格子是否还可能有更近的点
+                    double bound = ringBoundMeters(y, r);
+                    if (bound > maxMeters || (size == k && heapMeters[0] <= bound)) {
+                        break;
+                    }
+                }
+                // 3.依次取出堆顶，得到由近到远的顺序
+                int result = size;
+                while (size > 0) {
+                    int last = --size;
+                    outIds[last] = ids[heapSlots[0]];
+                    outMeters[last] = heapMeters[0];
+                    heapMeters[0] = heapMeters[last];
+                    heapSlots[0] = heapSlots[last];
+                    siftDown(heapMeters, heapSlots, size);
+                }
+                return result;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * 第 r 圈之外的点到查询点的最小距离，经度方向的格子宽度按这一圈最靠近极点的纬度计算
+     */
+    private double ringBoundMeters(double y, long r) {
+        double farLat = Math.min(90, Math.abs(y) + (r + 1) * cellDegrees);
+        double widthMeters = r * cellDegrees * METERS_PER_DEGREE * Math.cos(Math.toRadians(farLat));
+        double heightMeters = r * cellDegrees * METERS_PER_DEGREE;
+        return Math.min(widthMeters, heightMeters);
+    }
+
+    private static void siftUp(double[] meters, int[] slots, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (meters[parent] >= meters[i]) {
+                return;
+            }
+            swap(meters, slots, parent, i);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(double[] meters, int[] slots, int size) {
+        int i = 0;
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                return;
+            }
+            int largest = left + 1 < size && meters[left + 1] > meters[left] ? left + 1 : left;
+            if (meters[i] >= meters[largest]) {
+                return;
+            }
+            swap(meters, slots, i, largest);
+            i = largest;
+        }
+    }
+
+    private static void swap(double[] meters, int[] slots, int a, int b) {
+        double m = meters[a];
+        meters[a] = meters[b];
+        meters[b] = m;
+        int s = slots[a];
+        slots[a] = slots[b];
+        slots[b] = s;
+    }
+
+    /**
+     * 格子中的下标列表
+     */
+    private static class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void remove(int value) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value) {
+                    values[i] = values[--size];
+                    return;
+                }
+            }
+        }
+
+        void replace(int oldValue, int newValue) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == oldValue) {
+                    values[i] = newValue;
+                    return;
+                }
+            }
+        }
+    }
+}
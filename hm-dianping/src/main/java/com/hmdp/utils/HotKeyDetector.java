@@ -0,0 +1,168 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 热点 key 探测：用滑动窗口统计每个 key 的访问次数
+ * 超过阈值的 key 升级为热点，数据复制一份到本地的短期副本中，之后的读取不再访问 redis 或数据库
+ * 访问次数降到阈值的一半以下时降级，删除本地副本
+ */
+@Slf4j
+@Component
+public class HotKeyDetector implements MessageListener {
+
+    private final int windowSeconds;
+    private final long threshold;
+    private final int maxTrackedKeys;
+
+    // 每个 key 的滑动窗口计数器
+    private final Map<String, WindowCounter> counters = new ConcurrentHashMap<>();
+    // 当前的热点 key，值为升级的时间
+    private final Map<String, Long> hotKeys = new ConcurrentHashMap<>();
+    // 热点 key 的本地副本
+    private final Cache<String, Object> replicas;
+
+    public HotKeyDetector(@Value("${hmdp.cache.hot-key.window-seconds:10}") int windowSeconds,
+                          @Value("${hmdp.cache.hot-key.threshold:1000}") long threshold,
+                          @Value("${hmdp.cache.hot-key.replica-ttl-seconds:5}") long replicaTtlSeconds,
+                          @Value("${hmdp.cache.hot-key.max-tracked-keys:100000}") int maxTrackedKeys) {
+        this.windowSeconds = windowSeconds;
+        this.threshold = threshold;
+        this.maxTrackedKeys = maxTrackedKeys;
+        this.replicas = Caffeine.newBuilder()
+                .maximumSize(10000)
+                .expireAfterWrite(replicaTtlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 记录一次访问
+     * @param key 访问的 key
+     * @return 是否是热点 key
+     */
+    public boolean record(String key) {
+        WindowCounter counter = counters.get(key);
+        if (counter == null) {
+            if (counters.size() >= maxTrackedKeys) {
+                // 统计的 key 太多，不再统计新的 key，等待定时任务清理
+                return false;
+            }
+            counter = counters.computeIfAbsent(key, k -> new WindowCounter(windowSeconds));
+        }
+        long now = nowSeconds();
+        counter.increment(now);
+        if (hotKeys.containsKey(key)) {
+            return true;
+        }
+        if (counter.sum(now) >= threshold) {
+            hotKeys.put(key, System.currentTimeMillis());
+            log.info("发现热点 key：{}", key);
+            return true;
+        }
+        return false;
+    }
+
+    public <R> R getReplica(String key, Class<R> type) {
+        Object value = replicas.getIfPresent(key);
+        return type.isInstance(value) ? type.cast(value) : null;
+    }
+
+    /**
+     * 写入本地副本，只有热点 key 才会写入
+     */
+    public void putReplica(String key, Object value) {
+        if (value != null && hotKeys.containsKey(key)) {
+            replicas.put(key, value);
+        }
+    }
+
+    /**
+     * 定时检查热点 key 是否降温，并清理没有访问的计数器
+     */
+    @Scheduled(fixedRate = 1000)
+    public void sweep() {
+        long now = nowSeconds();
+        counters.forEach((key, counter) -> {
+            long sum = counter.sum(now);
+            if (hotKeys.containsKey(key) && sum < threshold / 2) {
+                hotKeys.remove(key);
+                replicas.invalidate(key);
+                log.info("热点 key 降级：{}", key);
+            }
+            if (sum == 0 && !hotKeys.containsKey(key)) {
+                counters.remove(key, counter);
+            }
+        });
+    }
+
+    /**
+     * 当前的热点 key 及其窗口内的访问次数
+     */
+    public Map<String, Long> hotKeys() {
+        long now = nowSeconds();
+        Map<String, Long> result = new TreeMap<>();
+        for (String key : hotKeys.keySet()) {
+            WindowCounter counter = counters.get(key);
+            result.put(key, counter == null ? 0 : counter.sum(now));
+        }
+        return result;
+    }
+
+    // 数据更新时删除本地副本，与 LocalCache 使用同一个频道
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        replicas.invalidate(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    private static long nowSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    /**
+     * 滑动窗口计数器，每秒一个桶，桶里记录所属的秒，过期的桶在下次写入时清零
+     */
+    private static class WindowCounter {
+        private final int size;
+        private final AtomicLongArray counts;
+        private final AtomicLongArray seconds;
+
+        WindowCounter(int size) {
+            this.size = size;
+            this.counts = new AtomicLongArray(size);
+            this.seconds = new AtomicLongArray(size);
+        }
+
+        void increment(long now) {
+            int slot = (int) (now % size);
+            long second = seconds.get(slot);
+            if (second != now && seconds.compareAndSet(slot, second, now)) {
+                counts.set(slot, 0);
+            }
+            counts.incrementAndGet(slot);
+        }
+
+        long sum(long now) {
+            long sum = 0;
+            for (int i = 0; i < size; i++) {
+                if (now - seconds.get(i) < size) {
+                    sum += counts.get(i);
+                }
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+
+/**
+ * 进程内的一级缓存，放在 redis 前面，直接保存反序列化后的对象
+ * 使用 caffeine（W-TinyLFU 淘汰策略），同时按容量和写入时间淘汰
+ * 数据更新时通过 redis 的发布订阅通知所有节点删除本地缓存
+ */
+@Slf4j
+@Component
+public class LocalCache implements MessageListener {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Cache<String, Object> cache;
+
+    public LocalCache(StringRedisTemplate stringRedisTemplate,
+                      @Value("${hmdp.cache.local.maximum-size:10000}") long maximumSize,
+                      @Value("${hmdp.cache.local.expire-seconds:60}") long expireSeconds) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    public <R> R get(String key, Class<R> type) {
+        Object value = cache.getIfPresent(key);
+        return type.isInstance(value) ? type.cast(value) : null;
+    }
+
+    public void put(String key, Object value) {
+        if (value == null) {
+            return;
+        }
+        cache.put(key, value);
+    }
+
+    /**
+     * 只删除本节点的缓存
+     */
+    public void invalidate(String key) {
+        cache.invalidate(key);
+    }
+
+    /**
+     * 删除本节点的缓存，并通知所有节点删除本地缓存和热点副本
+     */
+    public void publishInvalidate(String key) {
+        invalidate(key);
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        log.debug("收到缓存失效通知，key：{}", key);
+        invalidate(key);
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", cache.estimatedSize());
+        result.put("hitRatio", stats.hitRate());
+        result.put("evictions", stats.evictionCount());
+        return result;
+    }
+}
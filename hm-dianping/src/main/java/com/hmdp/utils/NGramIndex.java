@@ -0,0 +1,270 @@
+package com.hmdp.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 内存中的 n-gram 倒排索引，用于按关键字搜索名称
+ * 每个名称拆分为单字和相邻两个字（bigram），每个 gram 对应一个按 id 升序的 id 列表
+ * 查询时取出现次数最少的 gram 作为候选集，再逐个校验名称是否包含关键字，除了忽略空白外，结果与 LIKE '%keyword%' 相同
+ * 排序规则：名称与关键字完全相同 > 以关键字开头 > 关键字出现的位置靠前 > 名称较短 > id 较小
+ */
+public class NGramIndex {
+
+    private static final long[] EMPTY = new long[0];
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // id 到归一化后的名称
+    private final Map<Long, String> names = new HashMap<>();
+    // gram 到 id 列表
+    private final Map<Long, LongList> postings = new HashMap<>();
+
+    /**
+     * 写入或更新一个名称
+     */
+    public void put(long id, String name) {
+        String normalized = normalize(name);
+        lock.writeLock().lock();
+        try {
+            String old = names.put(id, normalized);
+            if (old != null) {
+                if (old.equals(normalized)) {
+                    return;
+                }
+                for (long gram : grams(old)) {
+                    LongList list = postings.get(gram);
+                    if (list != null && list.remove(id) && list.size == 0) {
+                        postings.remove(gram);
+                    }
+                }
+            }
+            for (long gram : grams(normalized)) {
+                postings.computeIfAbsent(gram, k -> new LongList()).add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return names.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 搜索名称包含关键字的 id
+     * @param keyword 关键字
+     * @param offset 跳过的数量
+     * @param limit 返回的数量
+     * @return 排序后的一页 id
+     */
+    public List<Long> search(String keyword, int offset, int limit) {
+        String query = normalize(keyword);
+        if (query.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        lock.readLock().lock();
+        try {
+            // 1.按 id 列表的长度排序，最短的作为候选集，任何一个 gram 不存在说明没有结果
+            long[] queryGrams = queryGrams(query);
+            LongList[] lists = new LongList[queryGrams.length];
+            for (int i = 0; i < queryGrams.length; i++) {
+                lists[i] = postings.get(queryGrams[i]);
+                if (lists[i] == null) {
+                    return new ArrayList<>();
+                }
+            }
+            Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+            long[] candidates = lists[0].values;
+            int candidateSize = lists[0].size;
+            // 2.候选 id 必须出现在所有 gram 的列表中，再校验名称是否包含关键字，同时计算排序分值：分值越小越靠前
+            long[] matchIds = new long[Math.min(candidateSize, 1024)];
+            long[] scores = new long[matchIds.length];
+            int matches = 0;
+            candidates:
+            for (int i = 0; i < candidateSize; i++) {
+                long id = candidates[i];
+                for (int j = 1; j < lists.length; j++) {
+                    if (Arrays.binarySearch(lists[j].values, 0, lists[j].size, id) < 0) {
+                        continue candidates;
+                    }
+                }
+                String name = names.get(id);
+                int position = name.indexOf(query);
+                if (position < 0) {
+                    continue;
+                }
+                if (matches == matchIds.length) {
+                    matchIds = Arrays.copyOf(matchIds, matches * 2);
+                    scores = Arrays.copyOf(scores, matches * 2);
+                }
+                matchIds[matches] = id;
+                scores[matches] = score(name, query, position);
+                matches++;
+            }
+            // 3.只需要前 offset + limit 条，用最大堆保留分值最小的部分，再依次取出
+            int keep = (int) Math.min((long) offset + limit, matches);
+            int[] heap = new int[keep];
+            int size = 0;
+            for (int i = 0; i < matches; i++) {
+                if (size < keep) {
+                    heap[size] = i;
+                    siftUp(heap, size++, scores, matchIds);
+                } else if (keep > 0 && before(i, heap[0], scores, matchIds)) {
+                    heap[0] = i;
+                    siftDown(heap, size, scores, matchIds);
+                }
+            }
+            long[] sorted = new long[size];
+            while (size > 0) {
+                sorted[--size] = matchIds[heap[0]];
+                heap[0] = heap[size];
+                siftDown(heap, size, scores, matchIds);
+            }
+            List<Long> page = new ArrayList<>(Math.max(0, sorted.length - offset));
+            for (int i = offset; i < sorted.length; i++) {
+                page.add(sorted[i]);
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 分值小的排在前面，分值相同时 id 小的排在前面
+    private static boolean before(int a, int b, long[] scores, long[] ids) {
+        return scores[a] != scores[b] ? scores[a] < scores[b] : ids[a] < ids[b];
+    }
+
+    // 堆顶是排在最后的元素
+    private static void siftUp(int[] heap, int i, long[] scores, long[] ids) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(heap[parent], heap[i], scores, ids)) {
+                return;
+            }
+            int t = heap[parent];
+            heap[parent] = heap[i];
+            heap[i] = t;
+            i = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, int size, long[] scores, long[] ids) {
+        int i = 0;
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                return;
+            }
+            int last = left + 1 < size && before(heap[left], heap[left + 1], scores, ids) ? left + 1 : left;
+            if (!before(heap[i], heap[last], scores, ids)) {
+                return;
+            }
+            int t = heap[last];
+            heap[last] = heap[i];
+            heap[i] = t;
+            i = last;
+        }
+    }
+
+    // 完全相同为 0，以关键字开头为 1，其余为 2，再依次比较出现的位置和名称长度
+    private static long score(String name, String query, int position) {
+        long kind = name.length() == query.length() ? 0 : position == 0 ? 1 : 2;
+        return (kind << 40) | ((long) Math.min(position, 0xFFFFF) << 20) | Math.min(name.length(), 0xFFFFF);
+    }
+
+    /**
+     * 拆分 gram：所有单字和所有相邻的两个字，单字用于只输入一个字的查询
+     */
+    static long[] grams(String s) {
+        int length = s.length();
+        if (length == 0) {
+            return EMPTY;
+        }
+        if (length == 1) {
+            return new long[]{s.charAt(0)};
+        }
+        long[] grams = new long[length + length - 1];
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            grams[n++] = s.charAt(i);
+            if (i + 1 < length) {
+                grams[n++] = bigram(s.charAt(i), s.charAt(i + 1));
+            }
+        }
+        return grams;
+    }
+
+    // 查询时只需要 bigram，bigram 都存在时单字一定存在；只有一个字时使用单字
+    private static long[] queryGrams(String s) {
+        if (s.length() == 1) {
+            return new long[]{s.charAt(0)};
+        }
+        long[] grams = new long[s.length() - 1];
+        for (int i = 0; i + 1 < s.length(); i++) {
+            grams[i] = bigram(s.charAt(i), s.charAt(i + 1));
+        }
+        return grams;
+    }
+
+    private static long bigram(char a, char b) {
+        return (1L << 32) | ((long) a << 16) | b;
+    }
+
+    // 忽略大小写和空白
+    static String normalize(String s) {
+        if (s == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                sb.append(c);
+            }
+        }
+        return sb.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 按升序排列的 id 列表，新增的 id 通常是最大的，直接追加到末尾
+     */
+    private static class LongList {
+        private long[] values = new long[4];
+        private int size;
+
+        void add(long value) {
+            int index = size > 0 && values[size - 1] < value ? -size - 1 : Arrays.binarySearch(values, 0, size, value);
+            if (index >= 0) {
+                return;
+            }
+            int insert = -index - 1;
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            System.arraycopy(values, insert, values, insert + 1, size - insert);
+            values[insert] = value;
+            size++;
+        }
+
+        boolean remove(long value) {
+            int index = Arrays.binarySearch(values, 0, size, value);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(values, index + 1, values, index, size - index - 1);
+            size--;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.VoucherOrder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * 已受理但还没有写入数据库的订单的预写日志
+ * 日志分为固定大小的段文件，当前段用内存映射写入，JVM 崩溃时已写入的数据仍在操作系统的页缓存中，
+ * 刷盘（force）由调用方按固定间隔批量执行，决定操作系统崩溃时最多丢失多久的数据
+ * 每条记录 32 字节：类型(4) 订单id(8) 用户id(8) 优惠券id(8) CRC32(4)，订单写入数据库后追加一条检查点记录
+ * 追加不加锁：用 CAS 在当前段中预留位置后直接写入映射内存，只有换段、检查点和压缩时加锁
+ * 并发写入时段中可能有还没有写完的记录，回放时跳过校验失败的记录，继续读取之后的记录
+ * 段只从最旧的一端删除：最旧的段中所有订单都有检查点后删除，长期没有检查点的订单由压缩复制到当前段
+ */
+public class OrderJournal implements Closeable {
+
+    static final int RECORD_BYTES = 32;
+    private static final int TYPE_ORDER = 1;
+    private static final int TYPE_CHECKPOINT = 2;
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+
+    // 每个线程一份，用于拼接记录和计算校验和
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final Path dir;
+    private final int segmentBytes;
+    // 段序号到段，按序号排列，最后一个是当前段，由 this 保护
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    // 还没有检查点的订单
+    private final Map<Long, Entry> pending = new ConcurrentHashMap<>();
+    private volatile Segment current;
+    // 上一个段，换段时可能还有线程在写入预留的位置，刷盘时一起刷
+    private volatile Segment previous;
+    private volatile boolean closed;
+
+    private final LongAdder appended = new LongAdder();
+    private long checkpointed;
+    private long compacted;
+    private long syncs;
+
+    /**
+     * 打开日志目录，读取已有的段，恢复还没有检查点的订单，之后的记录写入新的段
+     * @param dir 日志目录，不存在时创建
+     * @param segmentBytes 段文件大小，向下取整为记录大小的整数倍
+     */
+    public OrderJournal(Path dir, int segmentBytes) throws IOException {
+        if (segmentBytes < RECORD_BYTES) {
+            throw new IllegalArgumentException("段文件不能小于一条记录");
+        }
+        this.dir = dir;
+        this.segmentBytes = segmentBytes / RECORD_BYTES * RECORD_BYTES;
+        Files.createDirectories(dir);
+        // 1.按序号读取所有段
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long seq = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+                segments.put(seq, new Segment(seq, file));
+            }
+        }
+        for (Segment segment : segments.values()) {
+            replay(segment);
+        }
+        for (Entry entry : pending.values()) {
+            entry.segment.live.incrementAndGet();
+        }
+        // 2.已有的段可能有写了一半的记录，不再写入，新记录写入新的段
+        openSegment(segments.isEmpty() ? 1 : segments.lastKey() + 1);
+        deleteCompletedHead();
+    }
+
+    private void replay(Segment segment) throws IOException {
+        ByteBuffer read = ByteBuffer.allocate(RECORD_BYTES * 2048);
+        Scratch scratch = SCRATCH.get();
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+            while (true) {
+                read.clear();
+                if (channel.read(read) <= 0) {
+                    return;
+                }
+                read.flip();
+                while (read.remaining() >= RECORD_BYTES) {
+                    read.get(scratch.bytes);
+                    int type = scratch.buffer.getInt(0);
+                    if (type == 0 || !scratch.checksumMatches()) {
+                        // 没有写入的位置或者写了一半的记录，并发写入时之后仍可能有完整的记录
+                        continue;
+                    }
+                    long orderId = scratch.buffer.getLong(4);
+                    if (type == TYPE_ORDER) {
+                        pending.put(orderId, new Entry(scratch.buffer.getLong(12), scratch.buffer.getLong(20), segment));
+                    } else if (type == TYPE_CHECKPOINT) {
+                        pending.remove(orderId);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 还没有检查点的订单，即启动前已受理但没有写入数据库的订单
+     */
+    public synchronized List<VoucherOrder> pendingOrders() {
+        List<VoucherOrder> orders = new ArrayList<>(pending.size());
+        pending.forEach((id, entry) -> {
+            VoucherOrder order = new VoucherOrder();
+            order.setId(id);
+            order.setUserId(entry.userId);
+            order.setVoucherId(entry.voucherId);
+            orders.add(order);
+        });
+        return orders;
+    }
+
+    /**
+     * 追加一个已受理的订单，只写入内存映射，不刷盘，不加锁
+     */
+    public void append(VoucherOrder order) {
+        ensureOpen();
+        // 写入时已经计入所在段的订单数
+        Segment segment = write(TYPE_ORDER, order.getId(), order.getUserId(), order.getVoucherId(), true);
+        Entry old = pending.put(order.getId(), new Entry(order.getUserId(), order.getVoucherId(), segment));
+        if (old != null) {
+            old.segment.live.decrementAndGet();
+        }
+        appended.increment();
+    }
+
+    /**
+     * 订单已经写入数据库或已经取消，追加检查点记录，不在日志中的订单忽略
+     */
+    public synchronized void checkpoint(Collection<Long> orderIds) {
+        ensureOpen();
+        boolean released = false;
+        for (Long orderId : orderIds) {
+            Entry entry = pending.remove(orderId);
+            if (entry == null) {
+                continue;
+            }
+            write(TYPE_CHECKPOINT, orderId, 0, 0, false);
+            released |= entry.segment.live.decrementAndGet() == 0 && entry.segment != current;
+            checkpointed++;
+        }
+        if (released) {
+            deleteCompletedHead();
+        }
+    }
+
+    /**
+     * 刷盘，没有新的写入时直接返回
+     */
+    public void sync() {
+        List<Segment> toForce = new ArrayList<>(2);
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            for (Segment segment : Arrays.asList(previous, current)) {
+                if (segment != null && segment.dirty) {
+                    segment.dirty = false;
+                    toForce.add(segment);
+                }
+            }
+            if (toForce.isEmpty()) {
+                return;
+            }
+            syncs++;
+        }
+        // 刷盘期间其它线程可以继续写入，写入的数据由下一次刷盘负责
+        for (Segment segment : toForce) {
+            segment.buffer.force();
+        }
+    }
+
+    /**
+     * 压缩：把旧段中还没有检查点的订单复制到当前段，然后删除旧段
+     * @return 复制的订单数
+     */
+    public synchronized int compact() {
+        ensureOpen();
+        if (segments.size() <= 1) {
+            return 0;
+        }
+        // 1.复制前先确定要删除的段，复制过程中可能换段
+        List<Segment> old = new ArrayList<>(segments.headMap(current.seq).values());
+        Map<Long, Entry> copies = new LinkedHashMap<>();
+        for (Map.Entry<Long, Entry> e : pending.entrySet()) {
+            if (e.getValue().segment.seq < current.seq) {
+                copies.put(e.getKey(), e.getValue());
+            }
+        }
+        // 2.复制到当前段并刷盘，确保复制的记录落盘后才删除旧段
+        for (Map.Entry<Long, Entry> e : copies.entrySet()) {
+            Entry entry = e.getValue();
+            Segment segment = write(TYPE_ORDER, e.getKey(), entry.userId, entry.voucherId, true);
+            entry.segment.live.decrementAndGet();
+            entry.segment = segment;
+        }
+        if (!copies.isEmpty()) {
+            forceAll();
+        }
+        // 3.删除旧段
+        for (Segment segment : old) {
+            if (segment.live.get() == 0) {
+                delete(segment);
+            }
+        }
+        compacted += copies.size();
+        return copies.size();
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("segments", segments.size());
+        stats.put("pending", pending.size());
+        stats.put("appended", appended.sum());
+        stats.put("checkpointed", checkpointed);
+        stats.put("compacted", compacted);
+        stats.put("syncs", syncs);
+        return stats;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        if (previous != null) {
+            previous.buffer.force();
+        }
+        current.buffer.force();
+        closed = true;
+    }
+
+    /**
+     * 在当前段中预留位置并写入一条记录，段已满时换段后重试
+     * @param order 为 true 时先计入段的订单数，写入完成前这个段不会被删除
+     * @return 记录所在的段
+     */
+    private Segment write(int type, long orderId, long userId, long voucherId, boolean order) {
+        while (true) {
+            Segment segment = current;
+            if (order) {
+                segment.live.incrementAndGet();
+            }
+            int position = segment.position.getAndAdd(RECORD_BYTES);
+            if (position <= segmentBytes - RECORD_BYTES) {
+                segment.put(position, type, orderId, userId, voucherId);
+                return segment;
+            }
+            if (order) {
+                segment.live.decrementAndGet();
+            }
+            rotate(segment);
+        }
+    }
+
+    // 段写满，刷盘后换到新的段，多个线程同时发现写满时只换一次
+    private synchronized void rotate(Segment full) {
+        if (current != full) {
+            return;
+        }
+        full.buffer.force();
+        previous = full;
+        openSegment(full.seq + 1);
+        deleteCompletedHead();
+    }
+
+    private void openSegment(long seq) {
+        Path path = dir.resolve(String.format("%s%016d%s", PREFIX, seq, SUFFIX));
+        Segment segment = new Segment(seq, path);
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(segmentBytes);
+            // 映射在通道关闭后仍然有效
+            segment.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("创建日志段失败：" + path, e);
+        }
+        segments.put(seq, segment);
+        current = segment;
+    }
+
+    // 从最旧的段开始，删除所有订单都有检查点的段，遇到还有订单的段就停止
+    private void deleteCompletedHead() {
+        Iterator<Segment> it = segments.values().iterator();
+        while (it.hasNext()) {
+            Segment segment = it.next();
+            if (segment == current || segment.live.get() > 0) {
+                return;
+            }
+            it.remove();
+            deleteFile(segment);
+        }
+    }
+
+    private void delete(Segment segment) {
+        segments.remove(segment.seq);
+        deleteFile(segment);
+    }
+
+    private void deleteFile(Segment segment) {
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("删除日志段失败：" + segment.path, e);
+        }
+    }
+
+    private void forceAll() {
+        current.dirty = false;
+        current.buffer.force();
+        syncs++;
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("日志已关闭");
+        }
+    }
+
+    private static class Segment {
+        private final long seq;
+        private final Path path;
+        // 还没有检查点的订单数，包括正在写入的订单
+        private final AtomicInteger live = new AtomicInteger();
+        // 下一条记录的位置，超过段大小说明已写满
+        private final AtomicInteger position = new AtomicInteger();
+        // 启动时回放的旧段不再写入，没有映射
+        private MappedByteBuffer buffer;
+        private volatile boolean dirty;
+
+        Segment(long seq, Path path) {
+            this.seq = seq;
+            this.path = path;
+        }
+
+        // 按绝对位置写入，不修改 buffer 的 position，多个线程写入不同的位置互不影响
+        void put(int position, int type, long orderId, long userId, long voucherId) {
+            Scratch scratch = SCRATCH.get();
+            scratch.buffer.putInt(0, type).putLong(4, orderId).putLong(12, userId).putLong(20, voucherId);
+            scratch.crc.reset();
+            scratch.crc.update(scratch.bytes, 0, RECORD_BYTES - 4);
+            buffer.putInt(position, type)
+                    .putLong(position + 4, orderId)
+                    .putLong(position + 12, userId)
+                    .putLong(position + 20, voucherId)
+                    .putInt(position + RECORD_BYTES - 4, (int) scratch.crc.getValue());
+            dirty = true;
+        }
+    }
+
+    private static class Scratch {
+        private final byte[] bytes = new byte[RECORD_BYTES];
+        private final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        private final CRC32 crc = new CRC32();
+
+        boolean checksumMatches() {
+            crc.reset();
+            crc.update(bytes, 0, RECORD_BYTES - 4);
+            return (int) crc.getValue() == buffer.getInt(RECORD_BYTES - 4);
+        }
+    }
+
+    private static class Entry {
+        private final long userId;
+        private final long voucherId;
+        // 压缩时修改，追加时在锁外读取
+        private volatile Segment segment;
+
+        Entry(long userId, long voucherId, Segment segment) {
+            this.userId = userId;
+            this.voucherId = voucherId;
+            this.segment = segment;
+        }
+    }
+}
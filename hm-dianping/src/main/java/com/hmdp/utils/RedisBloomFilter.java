@@ -0,0 +1,188 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 基于 redis bitmap 的布隆过滤器，所有节点共享 redis 中的数据，同时在本地保存一份镜像
+ * 本地镜像判断存在时直接放行；本地判断不存在时，可能是其它节点新增的 id，再检查 redis
+ * 重建期间新增的 id 由 lua 脚本同时写入临时 key，rename 替换后不会丢失
+ */
+@Slf4j
+public class RedisBloomFilter {
+
+    // 重建时每批查询的 id 数量，idLoader 每次最多返回这么多 id
+    public static final int BATCH_SIZE = 10000;
+    // 重建的超时时间，也是重建锁和临时 key 的过期时间
+    public static final long REBUILD_TIMEOUT_SECONDS = 600;
+
+    private static final DefaultRedisScript<Long> ADD_SCRIPT;
+    private static final DefaultRedisScript<Long> SWAP_SCRIPT;
+
+    static {
+        ADD_SCRIPT = new DefaultRedisScript<>();
+        ADD_SCRIPT.setLocation(new ClassPathResource("bloom_add.lua"));
+        ADD_SCRIPT.setResultType(Long.class);
+        SWAP_SCRIPT = new DefaultRedisScript<>();
+        SWAP_SCRIPT.setLocation(new ClassPathResource("bloom_swap.lua"));
+        SWAP_SCRIPT.setResultType(Long.class);
+    }
+
+    private final String key;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final long expectedInsertions;
+    private final double fpp;
+    // 按 id 升序查询大于 lastId 的一批 id
+    private final Function<Long, List<Long>> idLoader;
+
+    private volatile BloomFilter local;
+    // 本地镜像是否已经加载，没有加载前不做拦截
+    private volatile boolean ready;
+
+    public RedisBloomFilter(String key, StringRedisTemplate stringRedisTemplate, long expectedInsertions,
+                            double fpp, Function<Long, List<Long>> idLoader) {
+        this.key = key;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.expectedInsertions = expectedInsertions;
+        this.fpp = fpp;
+        this.idLoader = idLoader;
+        this.local = new BloomFilter(expectedInsertions, fpp);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * 判断 id 是否可能存在，返回 false 时 id 一定不存在
+     */
+    public boolean mightContain(Long id) {
+        if (id == null) {
+            return false;
+        }
+        if (!ready || local.mightContain(id)) {
+            return true;
+        }
+        // 本地不存在，检查 redis 中的位，可能是其它节点新增的
+        long[] offsets = local.offsets(id);
+        try {
+            List<Object> bits = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                byte[] rawKey = toBytes(key);
+                for (long offset : offsets) {
+                    connection.getBit(rawKey, offset);
+                }
+                return null;
+            });
+            for (Object bit : bits) {
+                if (!Boolean.TRUE.equals(bit)) {
+                    return false;
+                }
+            }
+        } catch (Exception e) {
+            // redis 异常时放行，交给后面的缓存空值兜底
+            log.warn("查询布隆过滤器失败，key：{}", key, e);
+            return true;
+        }
+        // redis 中存在，同步到本地镜像
+        for (long offset : offsets) {
+            local.set(offset);
+        }
+        return true;
+    }
+
+    /**
+     * 新增 id，同时写入本地镜像和 redis；正在重建时同时写入临时 key
+     * 需要在数据库事务提交后调用，保证重建开始前新增的 id 能被重建时的查询看到
+     */
+    public void add(Long id) {
+        if (id == null) {
+            return;
+        }
+        local.put(id);
+        long[] offsets = local.offsets(id);
+        String[] args = new String[offsets.length];
+        for (int i = 0; i < offsets.length; i++) {
+            args[i] = String.valueOf(offsets[i]);
+        }
+        stringRedisTemplate.execute(ADD_SCRIPT, Arrays.asList(key, tmpKey()), (Object[]) args);
+    }
+
+    /**
+     * 从 redis 加载本地镜像
+     * @return redis 中不存在时返回 false，需要抢到锁的节点从数据库重建
+     */
+    public boolean load() {
+        byte[] bytes = stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(toBytes(key)));
+        if (bytes == null) {
+            return false;
+        }
+        BloomFilter filter = new BloomFilter(expectedInsertions, fpp);
+        filter.mergeRedisBytes(bytes);
+        local = filter;
+        ready = true;
+        return true;
+    }
+
+    /**
+     * 从数据库全量重建，调用方需要持有分布式锁，保证同一时间只有一个节点重建
+     * 1.先创建临时 key，之后所有节点的 add 同时写入过滤器 key 和临时 key
+     * 2.按 id 升序查询数据库写入新的过滤器，结果写入 build key
+     * 3.把 build key 合并到临时 key，再 rename 替换过滤器 key，重建期间新增的 id 都在临时 key 中
+     */
+    public void rebuild() {
+        long begin = System.currentTimeMillis();
+        byte[] rawTmpKey = toBytes(tmpKey());
+        byte[] rawBuildKey = toBytes(key + ":build");
+        // 1.创建临时 key，过期时间与锁相同，重建的节点宕机后自动删除
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> connection.set(rawTmpKey, new byte[0],
+                Expiration.seconds(REBUILD_TIMEOUT_SECONDS), RedisStringCommands.SetOption.UPSERT));
+        // 2.按 id 升序分批查询，写入新的过滤器
+        BloomFilter filter = new BloomFilter(expectedInsertions, fpp);
+        long count = 0;
+        long lastId = 0;
+        List<Long> ids;
+        while (!(ids = idLoader.apply(lastId)).isEmpty()) {
+            for (Long id : ids) {
+                filter.put(id);
+            }
+            count += ids.size();
+            lastId = ids.get(ids.size() - 1);
+            if (ids.size() < BATCH_SIZE) {
+                break;
+            }
+        }
+        // 3.写入 build key，与临时 key 合并后替换
+        byte[] bytes = filter.toRedisBytes();
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> connection.set(rawBuildKey, bytes));
+        Long swapped = stringRedisTemplate.execute(SWAP_SCRIPT, Arrays.asList(key, tmpKey(), key + ":build"));
+        if (swapped == null || swapped == 0) {
+            log.warn("布隆过滤器重建超时，保留原来的数据，key：{}，耗时：{}ms", key, System.currentTimeMillis() - begin);
+            return;
+        }
+        // 4.重新加载本地镜像，包含其它节点在重建期间新增的 id
+        load();
+        log.info("布隆过滤器重建完成，key：{}，数量：{}，耗时：{}ms", key, count, System.currentTimeMillis() - begin);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    private String tmpKey() {
+        return key + ":tmp";
+    }
+
+    private static byte[] toBytes(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+}
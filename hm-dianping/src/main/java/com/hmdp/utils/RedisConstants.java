@@ -6,15 +6,34 @@ public class RedisConstants {
     public static final String LOGIN_USER_KEY = "login:token:";
     public static final Long LOGIN_USER_TTL = 36000L;
 
+    public static final String CACHE_KEY_PREFIX = "cache:";
+    public static final String LOCK_KEY_PREFIX = "lock:";
+
     public static final Long CACHE_NULL_TTL = 2L;
 
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
 
+    public static final Long CACHE_BLOG_TTL = 30L;
+    public static final String CACHE_BLOG_KEY = "cache:blog:";
+
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
 
+    public static final String BLOOM_SHOP_KEY = "bloom:shop";
+    public static final String BLOOM_BLOG_KEY = "bloom:blog";
+    public static final String BLOOM_VOUCHER_KEY = "bloom:voucher";
+
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_STOCK_BUCKET_KEY = "seckill:stock:bucket:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_ROLLBACK_KEY = "seckill:rollback:";
+    public static final Long SECKILL_ROLLBACK_TTL = 86400L;
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:sold-out";
+    public static final String SECKILL_REPLENISH_CHANNEL = "seckill:replenish";
+    public static final String SECKILL_VOUCHER_CHANNEL = "seckill:voucher";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
@@ -9,4 +9,6 @@ import java.time.LocalDateTime;
 public class RedisData {
     private LocalDateTime expireTime;
     private Object data;
+    // 上次重建这条数据花费的毫秒数，用于提前刷新
+    private Long delta;
 }
@@ -1,13 +1,30 @@
 package com.hmdp.utils;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
-
+/**
+ * 全局唯一id：0位符号位，31位时间戳，32位当天的序列号
+ * 号段模式：每个节点用一次 INCRBY 租用 step 个序列号，在本地用 CAS 逐个发放；
+ * 当前号段用掉 10% 时由后台线程预取下一个号段，用完时直接切换，发放id时不访问 redis、不创建对象
+ * 序列号按天重新开始，日期变化时丢弃旧号段；节点重启时没有用完的序列号被跳过，id 不连续但不会重复
+ */
+@Slf4j
 @Component
 public class RedisIdWorker {
 
@@ -22,28 +39,191 @@ public class RedisIdWorker {
      */
     private static final int COUNT_BITS = 32;
 
-    private StringRedisTemplate stringRedisTemplate;
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
+
+    private final StringRedisTemplate stringRedisTemplate;
+    // 每次租用的序列号个数，不大于 1 时每个id执行一次 INCR
+    private final int step;
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    private final Map<String, SegmentBuffer> buffers = new ConcurrentHashMap<>();
+    private final ExecutorService refillExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "id-segment-refill");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // 当前日期，日期变化时替换
+    private volatile Day day;
 
-    public RedisIdWorker(StringRedisTemplate stringRedisTemplate) {
+    public RedisIdWorker(StringRedisTemplate stringRedisTemplate,
+                         @Value("${hmdp.id.segment-step:1000}") int step) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.step = step;
     }
 
     // 根据不同的业务，生成id
     public long nextId(String keyPrefix) {
-        // 1.生成时间戳
-        LocalDateTime now = LocalDateTime.now();
-        long timestamp = now.toEpochSecond(ZoneOffset.UTC) - BEGIN_TIMESTAMP;
+        return nextId(keyPrefix, System.currentTimeMillis());
+    }
+
+    long nextId(String keyPrefix, long now) {
+        // 1.生成时间戳，与按本地时间计算的秒数相同
+        Day day = currentDay(now);
+        long timestamp = Math.floorDiv(now, 1000L) + day.offsetSeconds - BEGIN_TIMESTAMP;
 
-        // 2.生成序列号
-        // 2.1获取当前日期    这样每天都可以有一个新的序列号重新开始
-        String date = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
-        // 2.2自增序列号
-        Long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);
+        // 2.生成序列号，每天一个 key，序列号重新开始
+        long count;
+        if (step <= 1) {
+            count = stringRedisTemplate.opsForValue().increment(day.key(keyPrefix));
+        } else {
+            SegmentBuffer buffer = buffers.get(keyPrefix);
+            if (buffer == null) {
+                buffer = buffers.computeIfAbsent(keyPrefix, SegmentBuffer::new);
+            }
+            count = buffer.next(day);
+        }
 
         // 3.拼接并返回  //因为是二进制，所以不能使用转类型，只能使用位运算
         return timestamp << COUNT_BITS | count;
     }
 
+    // 当前日期的缓存，只在日期变化时重新计算
+    private Day currentDay(long now) {
+        Day d = day;
+        if (d != null && now >= d.startMillis && now < d.endMillis) {
+            return d;
+        }
+        synchronized (this) {
+            d = day;
+            if (d == null || now < d.startMillis || now >= d.endMillis) {
+                d = new Day(zone, now);
+                day = d;
+            }
+            return d;
+        }
+    }
 
+    @PreDestroy
+    public void shutdown() {
+        refillExecutor.shutdownNow();
+    }
+
+    private static class Day {
+        private final String date;
+        private final long startMillis;
+        private final long endMillis;
+        private final int offsetSeconds;
+
+        Day(ZoneId zone, long now) {
+            LocalDate date = ZonedDateTime.ofInstant(Instant.ofEpochMilli(now), zone).toLocalDate();
+            ZonedDateTime start = date.atStartOfDay(zone);
+            this.date = date.format(DATE_FORMATTER);
+            this.startMillis = start.toInstant().toEpochMilli();
+            this.endMillis = date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            this.offsetSeconds = start.getOffset().getTotalSeconds();
+        }
+
+        String key(String keyPrefix) {
+            return "icr:" + keyPrefix + ":" + date;
+        }
+    }
 
+    // 一个号段：[cursor, max] 之间的序列号，cursor 到达 refillAt 时预取下一个号段
+    private static class Segment {
+        private final Day day;
+        private final AtomicLong cursor;
+        private final long max;
+        private final long refillAt;
+
+        Segment(Day day, long max, int step) {
+            this.day = day;
+            this.max = max;
+            long start = max - step + 1;
+            this.cursor = new AtomicLong(start);
+            this.refillAt = start + step / 10;
+        }
+    }
+
+    // 一个业务的双号段：正在使用的号段和预取的号段
+    private class SegmentBuffer {
+        private final String keyPrefix;
+        private volatile Segment current;
+        private volatile Segment prefetched;
+        private final AtomicBoolean loading = new AtomicBoolean();
+
+        SegmentBuffer(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+        }
+
+        long next(Day day) {
+            while (true) {
+                Segment segment = current;
+                if (segment == null || segment.day != day) {
+                    segment = switchDay(day);
+                }
+                long count = segment.cursor.getAndIncrement();
+                if (count <= segment.max) {
+                    // 只有取到 refillAt 的线程触发预取
+                    if (count == segment.refillAt) {
+                        prefetch(day);
+                    }
+                    return count;
+                }
+                // 当前号段用完，切换到预取的号段
+                switchSegment(segment, day);
+            }
+        }
+
+        private synchronized Segment switchDay(Day day) {
+            Segment segment = current;
+            if (segment == null || segment.day != day) {
+                segment = lease(day);
+                current = segment;
+                prefetched = null;
+            }
+            return segment;
+        }
+
+        private synchronized void switchSegment(Segment exhausted, Day day) {
+            if (current != exhausted) {
+                // 其它线程已经切换
+                return;
+            }
+            Segment next = prefetched;
+            prefetched = null;
+            // 预取还没有完成或者已经跨天，同步租用
+            current = next != null && next.day == day ? next : lease(day);
+        }
+
+        private void prefetch(Day day) {
+            if (prefetched != null || !loading.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                refillExecutor.execute(() -> {
+                    try {
+                        Segment segment = lease(day);
+                        synchronized (this) {
+                            if (prefetched == null && current != null && current.day == day) {
+                                prefetched = segment;
+                            }
+                        }
+                    } catch (Exception e) {
+                        // 预取失败时，用完当前号段后同步租用
+                        log.warn("预取号段失败，keyPrefix：{}", keyPrefix, e);
+                    } finally {
+                        loading.set(false);
+                    }
+                });
+            } catch (RuntimeException e) {
+                loading.set(false);
+                log.warn("提交预取号段任务失败，keyPrefix：{}", keyPrefix, e);
+            }
+        }
+
+        private Segment lease(Day day) {
+            Long max = stringRedisTemplate.opsForValue().increment(day.key(keyPrefix), step);
+            return new Segment(day, max, step);
+        }
+    }
 }
@@ -0,0 +1,112 @@
+package com.hmdp.utils;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 有界无锁环形队列，多个生产者、单个消费者
+ * 每个槽位带一个序号：序号等于写入位置时可以写，等于写入位置 + 1 时可以读，读完后加上容量留给下一圈
+ * 生产者用 CAS 抢占写入位置，队列满时立即返回 false，不阻塞；消费者一次取出一批
+ */
+public class RingBuffer<E> {
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    // 下一个写入位置，生产者竞争
+    private final AtomicLong tail = new AtomicLong();
+    // 下一个读取位置，只有消费者修改
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * @param capacity 容量，向上取整为 2 的幂
+     */
+    public RingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("容量必须在 1 到 2^30 之间");
+        }
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.elements = new AtomicReferenceArray<>(this.capacity);
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * 写入一个元素，可以多个线程同时调用
+     * @return 队列已满时返回 false
+     */
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        long position;
+        int index;
+        while (true) {
+            position = tail.get();
+            index = (int) position & mask;
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                // 槽位空闲，抢占写入位置
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (diff < 0) {
+                // 槽位中还是上一圈没有读取的元素，队列已满
+                return false;
+            }
+            // 其它生产者已经抢占了这个位置，重试
+        }
+        elements.lazySet(index, e);
+        // 发布：序号改为 position + 1 后消费者才能读取
+        sequences.lazySet(index, position + 1);
+        return true;
+    }
+
+    /**
+     * 取出最多 max 个元素追加到 out，只能由一个线程调用
+     * @return 取出的数量
+     */
+    public int drainTo(List<? super E> out, int max) {
+        long position = head.get();
+        int n = 0;
+        while (n < max) {
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) {
+                // 还没有写入或者正在写入
+                break;
+            }
+            out.add(elements.get(index));
+            elements.lazySet(index, null);
+            // 释放槽位给下一圈的生产者
+            sequences.lazySet(index, position + capacity);
+            position++;
+            n++;
+        }
+        if (n > 0) {
+            head.lazySet(position);
+        }
+        return n;
+    }
+
+    /**
+     * 已经抢占写入位置但没有取出的数量，并发时为近似值
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
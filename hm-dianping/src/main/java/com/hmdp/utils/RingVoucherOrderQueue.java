@@ -0,0 +1,143 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 基于无锁环形队列的秒杀订单队列，适用于单节点部署
+ * 下单线程只做一次 CAS 写入，队列满时立即返回，不阻塞 tomcat 线程
+ * 单个消费线程批量取出订单，组提交：一个事务内每个优惠券扣减一次库存，订单用一条多行 INSERT 写入
+ * 队列在内存中，进程崩溃时未处理的订单由预写日志在下次启动时恢复
+ */
+@Slf4j
+@Component
+// 关闭时先处理完队列中的订单，再关闭预写日志
+@DependsOn("voucherOrderJournal")
+@ConditionalOnProperty(name = "hmdp.seckill.queue", havingValue = "ring")
+public class RingVoucherOrderQueue implements VoucherOrderQueue {
+
+    // 队列为空时消费线程休眠的时间
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    @Lazy
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
+    private final RingBuffer<VoucherOrder> ringBuffer;
+    private final int batchSize;
+    private final Thread consumer;
+    private volatile boolean running = true;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder persisted = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder persistNanos = new LongAdder();
+
+    public RingVoucherOrderQueue(@Value("${hmdp.seckill.queue-capacity:1048576}") int capacity,
+                                 @Value("${hmdp.seckill.ring.batch-size:500}") int batchSize) {
+        this.ringBuffer = new RingBuffer<>(capacity);
+        this.batchSize = batchSize;
+        this.consumer = new Thread(this::handle, "voucher-order-ring");
+        this.consumer.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        consumer.start();
+    }
+
+    @Override
+    public boolean offer(VoucherOrder voucherOrder) {
+        if (ringBuffer.offer(voucherOrder)) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    private void handle() {
+        List<VoucherOrder> batch = new ArrayList<>(batchSize);
+        while (running || !ringBuffer.isEmpty()) {
+            // 1.取出一批订单，队列为空时短暂休眠
+            if (ringBuffer.drainTo(batch, batchSize) == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            // 2.组提交
+            persist(batch);
+            batch.clear();
+        }
+    }
+
+    private void persist(List<VoucherOrder> batch) {
+        batches.increment();
+        received.add(batch.size());
+        long begin = System.nanoTime();
+        try {
+            persisted.add(voucherOrderService.createVoucherOrders(batch).getCreated().size());
+            return;
+        } catch (Exception e) {
+            log.error("批量写入订单异常，改为逐个写入，订单数：{}", batch.size(), e);
+        } finally {
+            persistNanos.add(System.nanoTime() - begin);
+        }
+        // 整批失败时逐个写入，避免一个订单的错误导致整批丢失
+        for (VoucherOrder voucherOrder : batch) {
+            try {
+                persisted.add(voucherOrderService.createVoucherOrders(Collections.singletonList(voucherOrder)).getCreated().size());
+            } catch (Exception e) {
+                failed.increment();
+                log.error("写入订单异常，orderId：{}", voucherOrder.getId(), e);
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("type", "ring");
+        stats.put("capacity", ringBuffer.capacity());
+        stats.put("pending", ringBuffer.size());
+        stats.put("rejected", rejected.sum());
+        stats.put("batches", batches.sum());
+        stats.put("received", received.sum());
+        stats.put("persisted", persisted.sum());
+        stats.put("failed", failed.sum());
+        long b = batches.sum();
+        stats.put("avgBatchSize", b == 0 ? 0 : received.sum() / b);
+        long nanos = persistNanos.sum();
+        // 写入数据库时的吞吐量，单位条/秒
+        stats.put("persistPerSecond", nanos == 0 ? 0 : received.sum() * 1000000000L / nanos);
+        return stats;
+    }
+
+    // 停止接收后处理完队列中剩余的订单
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        consumer.join(TimeUnit.SECONDS.toMillis(30));
+        if (consumer.isAlive()) {
+            log.warn("订单队列未能在 30 秒内处理完，剩余订单：{}", ringBuffer.size());
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_REPLENISH_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+
+/**
+ * 秒杀准入的本地预过滤，在访问 redis 和数据库之前拒绝一定买不到的请求
+ * 1.售罄标记：秒杀脚本返回库存不足后标记，并通过 redis 频道通知所有节点；
+ *   标记有有效期，过期后放行请求重新由 redis 判断，避免归还的库存因为标记而卖不出去
+ * 2.令牌预算（可选）：每个节点每个优惠券最多放行 库存 × token-factor / nodes 个成功的秒杀，
+ *   重复下单和被撤销的秒杀归还令牌
+ * 补充库存时通过频道通知所有节点清除售罄标记并重置令牌
+ */
+@Slf4j
+@Component
+public class SeckillAdmission implements MessageListener {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final long soldOutTtlMillis;
+    private final double tokenFactor;
+    private final int nodes;
+
+    private final Map<Long, Gate> gates = new ConcurrentHashMap<>();
+    private final LongAdder soldOutRejected = new LongAdder();
+    private final LongAdder tokenRejected = new LongAdder();
+
+    public SeckillAdmission(StringRedisTemplate stringRedisTemplate,
+                            @Value("${hmdp.seckill.admission.sold-out-ttl-ms:5000}") long soldOutTtlMillis,
+                            @Value("${hmdp.seckill.admission.token-factor:0}") double tokenFactor,
+                            @Value("${hmdp.seckill.admission.nodes:1}") int nodes) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.soldOutTtlMillis = soldOutTtlMillis;
+        this.tokenFactor = tokenFactor;
+        this.nodes = Math.max(1, nodes);
+    }
+
+    /**
+     * 是否已经售罄
+     */
+    public boolean isSoldOut(Long voucherId) {
+        Gate gate = gates.get(voucherId);
+        if (gate == null || gate.soldOutUntil < System.currentTimeMillis()) {
+            return false;
+        }
+        soldOutRejected.increment();
+        return true;
+    }
+
+    /**
+     * 获取一个令牌，没有设置令牌预算时总是成功
+     * @return 本节点的令牌已经用完时返回 false
+     */
+    public boolean tryAcquire(Long voucherId) {
+        Gate gate = gates.get(voucherId);
+        if (gate == null || gate.unlimited) {
+            return true;
+        }
+        AtomicLong tokens = gate.tokens;
+        while (true) {
+            long n = tokens.get();
+            if (n <= 0) {
+                tokenRejected.increment();
+                return false;
+            }
+            if (tokens.compareAndSet(n, n - 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 归还令牌：获取令牌后没有成功秒杀
+     */
+    public void release(Long voucherId) {
+        Gate gate = gates.get(voucherId);
+        if (gate != null && !gate.unlimited) {
+            gate.tokens.incrementAndGet();
+        }
+    }
+
+    /**
+     * 标记售罄并通知所有节点，已经标记过时不重复通知
+     */
+    public void publishSoldOut(Long voucherId) {
+        if (markSoldOut(voucherId)) {
+            stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, voucherId.toString());
+        }
+    }
+
+    /**
+     * 补充库存后通知所有节点，清除售罄标记
+     * @param stock 新的库存，用于重置令牌；小于 0 时只清除售罄标记，例如撤销秒杀归还了库存
+     */
+    public void publishReplenish(Long voucherId, long stock) {
+        replenish(voucherId, stock);
+        stringRedisTemplate.convertAndSend(SECKILL_REPLENISH_CHANNEL, voucherId + ":" + stock);
+    }
+
+    /**
+     * 只修改本节点：启动时根据 redis 中的库存初始化
+     */
+    public void reset(Long voucherId, long stock) {
+        replenish(voucherId, stock);
+        if (stock <= 0) {
+            markSoldOut(voucherId);
+        }
+    }
+
+    private boolean markSoldOut(Long voucherId) {
+        Gate gate = gates.computeIfAbsent(voucherId, k -> new Gate(Long.MAX_VALUE));
+        long now = System.currentTimeMillis();
+        boolean changed = gate.soldOutUntil < now;
+        gate.soldOutUntil = now + soldOutTtlMillis;
+        return changed;
+    }
+
+    private void replenish(Long voucherId, long stock) {
+        if (stock < 0) {
+            Gate gate = gates.get(voucherId);
+            if (gate != null) {
+                gate.soldOutUntil = 0;
+            }
+            return;
+        }
+        // 替换整个对象，旧对象上正在进行的获取和归还不影响新的预算
+        gates.put(voucherId, new Gate(budget(stock)));
+    }
+
+    private long budget(long stock) {
+        if (tokenFactor <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return (long) Math.ceil(stock * tokenFactor / nodes);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            if (SECKILL_SOLD_OUT_CHANNEL.equals(channel)) {
+                markSoldOut(Long.valueOf(body));
+            } else if (SECKILL_REPLENISH_CHANNEL.equals(channel)) {
+                int i = body.indexOf(':');
+                replenish(Long.valueOf(body.substring(0, i)), Long.parseLong(body.substring(i + 1)));
+            }
+        } catch (RuntimeException e) {
+            log.warn("无法解析秒杀准入通知，channel：{}，body：{}", channel, body);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long now = System.currentTimeMillis();
+        Map<Long, Object> vouchers = new TreeMap<>();
+        gates.forEach((voucherId, gate) -> {
+            Map<String, Object> v = new LinkedHashMap<>();
+            v.put("soldOut", gate.soldOutUntil >= now);
+            v.put("tokens", gate.unlimited ? -1 : gate.tokens.get());
+            vouchers.put(voucherId, v);
+        });
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("soldOutRejected", soldOutRejected.sum());
+        stats.put("tokenRejected", tokenRejected.sum());
+        stats.put("vouchers", vouchers);
+        return stats;
+    }
+
+    private static class Gate {
+        // 售罄标记的过期时间，小于当前时间表示没有售罄
+        private volatile long soldOutUntil;
+        // 没有令牌预算
+        private final boolean unlimited;
+        // 剩余令牌
+        private final AtomicLong tokens;
+
+        Gate(long tokens) {
+            this.unlimited = tokens == Long.MAX_VALUE;
+            this.tokens = new AtomicLong(tokens);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.SeckillStockBucket;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.service.ISeckillStockBucketService;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IVoucherOrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_BUCKET_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+
+/**
+ * 启动时把还没有结束的秒杀券库存和已下单用户加载到 redis，秒杀时间加载到本地时间表
+ * 只在 redis 中不存在时写入，不会覆盖正在进行的秒杀；库存和已下单用户由一个 lua 脚本原子写入
+ */
+@Slf4j
+@Component
+public class SeckillStockLoader implements ApplicationRunner {
+
+    private static final DefaultRedisScript<Long> SEED_SCRIPT;
+
+    static {
+        SEED_SCRIPT = new DefaultRedisScript<>();
+        SEED_SCRIPT.setLocation(new ClassPathResource("seckill_seed.lua"));
+        SEED_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private SeckillAdmission seckillAdmission;
+    @Resource
+    private ISeckillStockBucketService seckillStockBucketService;
+    @Resource
+    private SeckillVoucherTable seckillVoucherTable;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            List<SeckillVoucher> vouchers = seckillVoucherService.query()
+                    .gt("end_time", LocalDateTime.now())
+                    .list();
+            for (SeckillVoucher voucher : vouchers) {
+                seckillVoucherTable.put(voucher);
+                load(voucher);
+            }
+            log.info("秒杀库存加载完成，数量：{}", vouchers.size());
+        } catch (Exception e) {
+            log.error("加载秒杀库存失败", e);
+        }
+    }
+
+    private void load(SeckillVoucher voucher) {
+        Long voucherId = voucher.getVoucherId();
+        // 1.库存 key，库存分桶时每个分桶一个 key
+        List<SeckillStockBucket> buckets = seckillStockBucketService.bucketCount(voucherId) > 1
+                ? seckillStockBucketService.listBuckets(voucherId)
+                : Collections.emptyList();
+        List<String> keys = new ArrayList<>();
+        List<String> args = new ArrayList<>();
+        if (buckets.isEmpty()) {
+            keys.add(SECKILL_STOCK_KEY + voucherId);
+            args.add(String.valueOf(voucher.getStock()));
+        }
+        for (SeckillStockBucket bucket : buckets) {
+            keys.add(SECKILL_STOCK_BUCKET_KEY + voucherId + ":" + bucket.getBucket());
+            args.add(String.valueOf(bucket.getStock()));
+        }
+        // 2.库存 key 不存在时，用一个脚本同时写入库存和已下单的用户，秒杀不会在两者之间通过一人一单的判断
+        Long existing = stringRedisTemplate.countExistingKeys(keys);
+        if (existing == null || existing < keys.size()) {
+            List<Object> userIds = voucherOrderService.listObjs(voucherOrderService.query()
+                    .select("user_id")
+                    .eq("voucher_id", voucherId)
+                    .getWrapper());
+            for (Object userId : userIds) {
+                args.add(userId.toString());
+            }
+            keys.add(SECKILL_ORDER_KEY + voucherId);
+            stringRedisTemplate.execute(SEED_SCRIPT, keys, args.toArray());
+            keys.remove(keys.size() - 1);
+        }
+        // 3.按 redis 中剩余的库存初始化本节点的售罄标记和令牌
+        long stock = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            stock += currentStock(keys.get(i), Integer.parseInt(args.get(i)));
+        }
+        seckillAdmission.reset(voucherId, stock);
+    }
+
+    private long currentStock(String key, int defaultStock) {
+        String stock = stringRedisTemplate.opsForValue().get(key);
+        return stock == null ? defaultStock : Long.parseLong(stock);
+    }
+}
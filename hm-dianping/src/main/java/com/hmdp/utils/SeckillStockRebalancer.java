@@ -0,0 +1,78 @@
+package com.hmdp.utils;
+
+import com.hmdp.service.ISeckillStockBucketService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_BUCKET_KEY;
+
+/**
+ * 库存分桶的再平衡：分桶按用户哈希选择，消耗速度不同，有分桶耗尽后把其它分桶的剩余库存平均分配回来
+ * 耗尽的分桶在秒杀时会继续查找其它分桶，再平衡只是减少查找次数和热点行，不影响正确性
+ * 每次只有拿到分布式锁的一个节点执行，分桶的库存不超过 threshold 时才锁定数据库中的分桶
+ */
+@Slf4j
+@Component
+public class SeckillStockRebalancer {
+
+    private static final DefaultRedisScript<Long> REBALANCE_SCRIPT;
+    private static final String LOCK_NAME = "seckill:rebalance";
+    private static final long LOCK_TIMEOUT_SECONDS = 30;
+
+    static {
+        REBALANCE_SCRIPT = new DefaultRedisScript<>();
+        REBALANCE_SCRIPT.setLocation(new ClassPathResource("seckill_rebalance.lua"));
+        REBALANCE_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private ISeckillStockBucketService seckillStockBucketService;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Value("${hmdp.seckill.rebalance-threshold:0}")
+    private int threshold;
+
+    @Scheduled(fixedDelayString = "${hmdp.seckill.rebalance-interval-ms:1000}")
+    public void rebalance() {
+        // 其它节点正在执行时跳过这一次
+        SimpleRedisLock lock = new SimpleRedisLock(LOCK_NAME, stringRedisTemplate);
+        if (!lock.tryLock(LOCK_TIMEOUT_SECONDS)) {
+            return;
+        }
+        try {
+            for (Long voucherId : seckillStockBucketService.bucketedVouchers()) {
+                try {
+                    rebalance(voucherId);
+                } catch (Exception e) {
+                    log.error("秒杀库存分桶再平衡失败，voucherId：{}", voucherId, e);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void rebalance(Long voucherId) {
+        // 1.redis 中的分桶：在一个脚本中读取并重新分配，与秒杀脚本互斥
+        int buckets = seckillStockBucketService.bucketCount(voucherId);
+        List<String> keys = new ArrayList<>(buckets);
+        for (int i = 0; i < buckets; i++) {
+            keys.add(SECKILL_STOCK_BUCKET_KEY + voucherId + ":" + i);
+        }
+        Long moved = stringRedisTemplate.execute(REBALANCE_SCRIPT, keys, String.valueOf(threshold));
+        if (moved != null && moved == 1) {
+            log.debug("重新分配 redis 库存分桶，voucherId：{}", voucherId);
+        }
+        // 2.数据库中的分桶，先不加锁检查是否有分桶低于 threshold
+        seckillStockBucketService.rebalance(voucherId, threshold);
+    }
+}
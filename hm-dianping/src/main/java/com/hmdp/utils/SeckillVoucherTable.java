@@ -0,0 +1,247 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.service.ISeckillVoucherService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_VOUCHER_CHANNEL;
+
+/**
+ * 秒杀券的本地时间表：秒杀请求判断是否开始、是否结束时不访问数据库
+ * 启动时加载还没有结束的秒杀券，新建秒杀券时写入，并通过 redis 频道通知所有节点从数据库重新加载
+ * 按结束时间建立索引，结束超过 retention-ms 的秒杀券定时替换为“已结束”的标记；表中没有的秒杀券查询一次数据库后加入，
+ * 数据库中不存在时记下“不存在”的标记，之后的请求都不再查询数据库
+ * 两种标记在布隆过滤器判断 id 一定不存在后才移除，这时请求在布隆过滤器就被拦截，不会再走到这里
+ * 库存不在这里判断，由本地售罄标记和 redis 中的库存判断
+ */
+@Slf4j
+@Component
+public class SeckillVoucherTable implements MessageListener {
+
+    // 数据库中不存在的秒杀券
+    private static final Window MISSING = new Window(Long.MAX_VALUE, Long.MAX_VALUE);
+    // 结束超过 retention-ms 的秒杀券
+    private static final Window ENDED = new Window(Long.MIN_VALUE, Long.MIN_VALUE);
+
+    private final ISeckillVoucherService seckillVoucherService;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisBloomFilter voucherBloomFilter;
+    private final long retentionMillis;
+
+    private final Map<Long, Window> windows = new ConcurrentHashMap<>();
+    // 按结束时间排列的秒杀券，只在写入和移除时使用，由 this 保护
+    private final NavigableMap<Long, Set<Long>> byEndTime = new TreeMap<>();
+    // 值为 MISSING 或 ENDED 的秒杀券，由 this 保护
+    private final Set<Long> tombstones = new HashSet<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public SeckillVoucherTable(ISeckillVoucherService seckillVoucherService,
+                               StringRedisTemplate stringRedisTemplate,
+                               @Qualifier("voucherBloomFilter") RedisBloomFilter voucherBloomFilter,
+                               @Value("${hmdp.seckill.voucher-table.retention-ms:3600000}") long retentionMillis) {
+        this.seckillVoucherService = seckillVoucherService;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.voucherBloomFilter = voucherBloomFilter;
+        this.retentionMillis = retentionMillis;
+    }
+
+    /**
+     * 查询秒杀券的时间窗口，表中没有时查询数据库
+     * @return 秒杀券不存在时返回 null
+     */
+    public Window get(Long voucherId) {
+        Window window = windows.get(voucherId);
+        if (window != null) {
+            hits.increment();
+            return window == MISSING ? null : window;
+        }
+        misses.increment();
+        return load(voucherId, false);
+    }
+
+    /**
+     * 写入本节点，例如启动时加载
+     */
+    public void put(SeckillVoucher voucher) {
+        put(voucher, true);
+    }
+
+    /**
+     * @param replace 是否覆盖已有的记录，为 false 时只在表中没有这张秒杀券时写入
+     */
+    private synchronized void put(SeckillVoucher voucher, boolean replace) {
+        if (!replace && windows.containsKey(voucher.getVoucherId())) {
+            return;
+        }
+        Window window = new Window(toMillis(voucher.getBeginTime()), toMillis(voucher.getEndTime()));
+        Window old = windows.put(voucher.getVoucherId(), window);
+        if (old != null) {
+            unindex(voucher.getVoucherId(), old);
+        }
+        byEndTime.computeIfAbsent(window.endMillis, k -> new HashSet<>()).add(voucher.getVoucherId());
+    }
+
+    /**
+     * 写入本节点并通知其它节点重新加载，秒杀券新建或修改后调用
+     */
+    public void publishChange(SeckillVoucher voucher) {
+        put(voucher);
+        stringRedisTemplate.convertAndSend(SECKILL_VOUCHER_CHANNEL, voucher.getVoucherId().toString());
+    }
+
+    /**
+     * 从数据库加载，不存在时记下 MISSING
+     * @param changed 是否由变更通知触发；请求触发时只在表中没有时写入，
+     *                避免在变更通知之前查询到的旧时间覆盖通知写入的新时间
+     */
+    private Window load(Long voucherId, boolean changed) {
+        SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
+        if (voucher == null) {
+            markMissing(voucherId, changed);
+            return null;
+        }
+        put(voucher, changed);
+        Window window = windows.get(voucherId);
+        return window == MISSING ? null : window;
+    }
+
+    private synchronized void markMissing(Long voucherId, boolean replace) {
+        Window old = replace ? windows.put(voucherId, MISSING) : windows.putIfAbsent(voucherId, MISSING);
+        if (old == null || replace) {
+            if (old != null) {
+                unindex(voucherId, old);
+            }
+            tombstones.add(voucherId);
+        }
+    }
+
+    private synchronized void remove(Long voucherId) {
+        Window old = windows.remove(voucherId);
+        if (old != null) {
+            unindex(voucherId, old);
+        }
+    }
+
+    private void unindex(Long voucherId, Window window) {
+        if (window == MISSING || window == ENDED) {
+            tombstones.remove(voucherId);
+            return;
+        }
+        Set<Long> ids = byEndTime.get(window.endMillis);
+        if (ids != null && ids.remove(voucherId) && ids.isEmpty()) {
+            byEndTime.remove(window.endMillis);
+        }
+    }
+
+    /**
+     * 结束时间超过 retention-ms 的秒杀券替换为 ENDED，布隆过滤器判断一定不存在的标记移除
+     */
+    @Scheduled(fixedDelayString = "${hmdp.seckill.voucher-table.evict-interval-ms:60000}")
+    public synchronized void evictEnded() {
+        // 1.已经结束的秒杀券只保留结束的标记，不再保留时间
+        Iterator<Set<Long>> it = byEndTime.headMap(System.currentTimeMillis() - retentionMillis).values().iterator();
+        while (it.hasNext()) {
+            for (Long voucherId : it.next()) {
+                windows.put(voucherId, ENDED);
+                tombstones.add(voucherId);
+            }
+            it.remove();
+        }
+        // 2.优惠券已经删除，并且布隆过滤器重建后不再包含，请求不会再查询这张秒杀券
+        Iterator<Long> ids = tombstones.iterator();
+        while (ids.hasNext()) {
+            Long voucherId = ids.next();
+            if (!voucherBloomFilter.mightContain(voucherId)) {
+                windows.remove(voucherId);
+                ids.remove();
+            }
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            load(Long.valueOf(body), true);
+        } catch (RuntimeException e) {
+            // 加载失败时移除，下次请求时再查询数据库
+            log.warn("重新加载秒杀券失败，voucherId：{}", body, e);
+            try {
+                remove(Long.valueOf(body));
+            } catch (NumberFormatException ignored) {
+                // 无法解析的消息
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long now = System.currentTimeMillis();
+        int missing = 0;
+        int upcoming = 0;
+        int active = 0;
+        for (Window window : windows.values()) {
+            if (window == MISSING) {
+                missing++;
+            } else if (!window.isStarted(now)) {
+                upcoming++;
+            } else if (!window.isEnded(now)) {
+                active++;
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", windows.size());
+        stats.put("upcoming", upcoming);
+        stats.put("active", active);
+        stats.put("ended", windows.size() - missing - upcoming - active);
+        stats.put("missing", missing);
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        return stats;
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * 秒杀的时间窗口，时间为毫秒时间戳
+     */
+    public static class Window {
+        private final long beginMillis;
+        private final long endMillis;
+
+        Window(long beginMillis, long endMillis) {
+            this.beginMillis = beginMillis;
+            this.endMillis = endMillis;
+        }
+
+        public boolean isStarted(long now) {
+            return beginMillis <= now;
+        }
+
+        public boolean isEnded(long now) {
+            return endMillis < now;
+        }
+    }
+}
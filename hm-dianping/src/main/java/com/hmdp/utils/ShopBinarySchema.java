@@ -0,0 +1,94 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+
+/**
+ * 商铺的二进制结构，先写一个标记非空字段的位图，再依次写入非空字段
+ * distance 不是数据库字段，不写入缓存
+ */
+public class ShopBinarySchema implements BinarySchema<Shop> {
+
+    private static final int ID = 1;
+    private static final int NAME = 1 << 1;
+    private static final int TYPE_ID = 1 << 2;
+    private static final int IMAGES = 1 << 3;
+    private static final int AREA = 1 << 4;
+    private static final int ADDRESS = 1 << 5;
+    private static final int X = 1 << 6;
+    private static final int Y = 1 << 7;
+    private static final int AVG_PRICE = 1 << 8;
+    private static final int SOLD = 1 << 9;
+    private static final int COMMENTS = 1 << 10;
+    private static final int SCORE = 1 << 11;
+    private static final int OPEN_HOURS = 1 << 12;
+    private static final int CREATE_TIME = 1 << 13;
+    private static final int UPDATE_TIME = 1 << 14;
+
+    @Override
+    public Class<Shop> type() {
+        return Shop.class;
+    }
+
+    @Override
+    public int version() {
+        return 1;
+    }
+
+    @Override
+    public void write(Shop shop, BinaryWriter out) {
+        int mask = 0;
+        mask |= shop.getId() != null ? ID : 0;
+        mask |= shop.getName() != null ? NAME : 0;
+        mask |= shop.getTypeId() != null ? TYPE_ID : 0;
+        mask |= shop.getImages() != null ? IMAGES : 0;
+        mask |= shop.getArea() != null ? AREA : 0;
+        mask |= shop.getAddress() != null ? ADDRESS : 0;
+        mask |= shop.getX() != null ? X : 0;
+        mask |= shop.getY() != null ? Y : 0;
+        mask |= shop.getAvgPrice() != null ? AVG_PRICE : 0;
+        mask |= shop.getSold() != null ? SOLD : 0;
+        mask |= shop.getComments() != null ? COMMENTS : 0;
+        mask |= shop.getScore() != null ? SCORE : 0;
+        mask |= shop.getOpenHours() != null ? OPEN_HOURS : 0;
+        mask |= shop.getCreateTime() != null ? CREATE_TIME : 0;
+        mask |= shop.getUpdateTime() != null ? UPDATE_TIME : 0;
+        out.writeVarLong(mask);
+        if ((mask & ID) != 0) out.writeZigZag(shop.getId());
+        if ((mask & NAME) != 0) out.writeString(shop.getName());
+        if ((mask & TYPE_ID) != 0) out.writeZigZag(shop.getTypeId());
+        if ((mask & IMAGES) != 0) out.writeString(shop.getImages());
+        if ((mask & AREA) != 0) out.writeString(shop.getArea());
+        if ((mask & ADDRESS) != 0) out.writeString(shop.getAddress());
+        if ((mask & X) != 0) out.writeDouble(shop.getX());
+        if ((mask & Y) != 0) out.writeDouble(shop.getY());
+        if ((mask & AVG_PRICE) != 0) out.writeZigZag(shop.getAvgPrice());
+        if ((mask & SOLD) != 0) out.writeZigZag(shop.getSold());
+        if ((mask & COMMENTS) != 0) out.writeZigZag(shop.getComments());
+        if ((mask & SCORE) != 0) out.writeZigZag(shop.getScore());
+        if ((mask & OPEN_HOURS) != 0) out.writeString(shop.getOpenHours());
+        if ((mask & CREATE_TIME) != 0) out.writeDateTime(shop.getCreateTime());
+        if ((mask & UPDATE_TIME) != 0) out.writeDateTime(shop.getUpdateTime());
+    }
+
+    @Override
+    public Shop read(BinaryReader in, int version) {
+        int mask = (int) in.readVarLong();
+        Shop shop = new Shop();
+        if ((mask & ID) != 0) shop.setId(in.readZigZag());
+        if ((mask & NAME) != 0) shop.setName(in.readString());
+        if ((mask & TYPE_ID) != 0) shop.setTypeId(in.readZigZag());
+        if ((mask & IMAGES) != 0) shop.setImages(in.readString());
+        if ((mask & AREA) != 0) shop.setArea(in.readString());
+        if ((mask & ADDRESS) != 0) shop.setAddress(in.readString());
+        if ((mask & X) != 0) shop.setX(in.readDouble());
+        if ((mask & Y) != 0) shop.setY(in.readDouble());
+        if ((mask & AVG_PRICE) != 0) shop.setAvgPrice(in.readZigZag());
+        if ((mask & SOLD) != 0) shop.setSold((int) in.readZigZag());
+        if ((mask & COMMENTS) != 0) shop.setComments((int) in.readZigZag());
+        if ((mask & SCORE) != 0) shop.setScore((int) in.readZigZag());
+        if ((mask & OPEN_HOURS) != 0) shop.setOpenHours(in.readString());
+        if ((mask & CREATE_TIME) != 0) shop.setCreateTime(in.readDateTime());
+        if ((mask & UPDATE_TIME) != 0) shop.setUpdateTime(in.readDateTime());
+        return shop;
+    }
+}
@@ -0,0 +1,139 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.service.IShopService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TTL;
+
+/**
+ * 商铺缓存预热：按 id 顺序分批查询 tb_shop，用管道写入逻辑过期格式的缓存
+ * 可以在启动时执行，也可以通过接口手动触发，写入速度受 rate 限制，避免压垮数据库和 redis
+ */
+@Slf4j
+@Component
+public class ShopCacheWarmer implements ApplicationRunner {
+
+    @Resource
+    private IShopService shopService;
+    @Resource
+    private CacheClient cacheClient;
+
+    @Value("${hmdp.cache.warmup.on-startup:false}")
+    private boolean onStartup;
+    @Value("${hmdp.cache.warmup.batch-size:500}")
+    private int batchSize;
+    // 每秒最多写入的商铺数量，不大于 0 时不限速
+    @Value("${hmdp.cache.warmup.rate:5000}")
+    private int rate;
+
+    private volatile boolean running;
+    private volatile long loaded;
+    private volatile long lastId;
+    private volatile long beginTime;
+    private volatile long endTime;
+    private volatile String error;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (onStartup) {
+            start();
+        }
+    }
+
+    /**
+     * 在后台线程开始预热
+     * @return 已经在预热中时返回 false
+     */
+    public synchronized boolean start() {
+        if (running) {
+            return false;
+        }
+        running = true;
+        loaded = 0;
+        lastId = 0;
+        error = null;
+        beginTime = System.currentTimeMillis();
+        endTime = 0;
+        Thread thread = new Thread(this::warmUp, "shop-cache-warmer");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    private void warmUp() {
+        try {
+            while (true) {
+                // 1.按 id 分批查询，避免 limit offset 越翻越慢
+                long queryBegin = System.currentTimeMillis();
+                List<Shop> shops = shopService.query()
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("limit " + batchSize)
+                        .list();
+                if (shops.isEmpty()) {
+                    break;
+                }
+                // 2.用管道一次写入一批，这批查询的耗时作为重建耗时，过期前按 XFetch 提前刷新
+                // 重建时按 id 查询一条，耗时不超过一批，至少按 1ms 计算
+                long deltaMillis = Math.max(1, System.currentTimeMillis() - queryBegin);
+                Map<String, Shop> values = new HashMap<>(shops.size() * 4 / 3 + 1);
+                for (Shop shop : shops) {
+                    values.put(CACHE_SHOP_KEY + shop.getId(), shop);
+                }
+                cacheClient.setBatchWithLogicalExpire(values, CACHE_SHOP_TTL, TimeUnit.MINUTES, deltaMillis);
+                loaded += shops.size();
+                lastId = shops.get(shops.size() - 1).getId();
+                if (shops.size() < batchSize) {
+                    break;
+                }
+                // 3.限速，写入速度超过 rate 时休眠，rate 不大于 0 时不限速
+                if (rate <= 0) {
+                    continue;
+                }
+                long expectedMillis = loaded * 1000 / rate;
+                long elapsedMillis = System.currentTimeMillis() - beginTime;
+                if (expectedMillis > elapsedMillis) {
+                    Thread.sleep(expectedMillis - elapsedMillis);
+                }
+            }
+            log.info("商铺缓存预热完成，数量：{}，耗时：{}ms", loaded, System.currentTimeMillis() - beginTime);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = "预热被中断";
+        } catch (Exception e) {
+            log.error("商铺缓存预热失败，lastId：{}", lastId, e);
+            error = e.getMessage();
+        } finally {
+            endTime = System.currentTimeMillis();
+            running = false;
+        }
+    }
+
+    /**
+     * 预热的进度和吞吐量
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        long elapsed = (running || endTime == 0 ? System.currentTimeMillis() : endTime) - beginTime;
+        status.put("running", running);
+        status.put("loaded", loaded);
+        status.put("lastId", lastId);
+        status.put("elapsedMillis", beginTime == 0 ? 0 : elapsed);
+        status.put("perSecond", beginTime == 0 || elapsed == 0 ? 0 : loaded * 1000 / elapsed);
+        status.put("error", error);
+        return status;
+    }
+}
@@ -0,0 +1,23 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * 商铺新增或更新的事件，在事务提交后由 GEO 索引和本地空间索引处理
+ */
+@Getter
+public class ShopChangedEvent extends ApplicationEvent {
+
+    // 更新前的商铺，新增时为 null
+    private final Shop before;
+    // 更新后的商铺
+    private final Shop after;
+
+    public ShopChangedEvent(Object source, Shop before, Shop after) {
+        super(source);
+        this.before = before;
+        this.after = after;
+    }
+}
@@ -0,0 +1,162 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.service.IShopService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.geo.Circle;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResult;
+import org.springframework.data.geo.GeoResults;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_KEY;
+
+/**
+ * 商铺的 redis GEO 索引，每个商铺类型一个 GEO 集合，member 为商铺 id
+ * 启动时从 tb_shop 分批加载，之后根据 ShopChangedEvent 在事务提交后同步修改
+ */
+@Slf4j
+@Component
+public class ShopGeoIndex implements ApplicationRunner {
+
+    // 附近商铺的搜索半径，单位米
+    public static final double SEARCH_RADIUS_METERS = 5000;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Lazy
+    @Resource
+    private IShopService shopService;
+
+    @Value("${hmdp.geo.load-on-startup:true}")
+    private boolean loadOnStartup;
+    @Value("${hmdp.geo.batch-size:1000}")
+    private int batchSize;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (loadOnStartup) {
+            try {
+                load();
+            } catch (Exception e) {
+                log.error("加载商铺 GEO 索引失败", e);
+            }
+        }
+    }
+
+    /**
+     * 从数据库分批加载所有商铺坐标，每批按类型分组后用管道写入
+     * @return 加载的商铺数量
+     */
+    public long load() {
+        long begin = System.currentTimeMillis();
+        long count = 0;
+        long lastId = 0;
+        while (true) {
+            // 1.按 id 分批查询，只查询需要的字段
+            List<Shop> shops = shopService.query()
+                    .select("id", "type_id", "x", "y")
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + batchSize)
+                    .list();
+            if (shops.isEmpty()) {
+                break;
+            }
+            // 2.按类型分组
+            Map<Long, Map<byte[], Point>> groups = new HashMap<>();
+            for (Shop shop : shops) {
+                if (hasLocation(shop)) {
+                    groups.computeIfAbsent(shop.getTypeId(), k -> new HashMap<>())
+                            .put(toBytes(shop.getId().toString()), new Point(shop.getX(), shop.getY()));
+                }
+            }
+            // 3.用管道写入，每个类型一条 GEOADD
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                groups.forEach((typeId, points) -> connection.geoAdd(toBytes(SHOP_GEO_KEY + typeId), points));
+                return null;
+            });
+            count += shops.size();
+            lastId = shops.get(shops.size() - 1).getId();
+            if (shops.size() < batchSize) {
+                break;
+            }
+        }
+        log.info("商铺 GEO 索引加载完成，数量：{}，耗时：{}ms", count, System.currentTimeMillis() - begin);
+        return count;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShopChanged(ShopChangedEvent event) {
+        move(event.getBefore(), event.getAfter());
+    }
+
+    /**
+     * 写入一个商铺的坐标
+     */
+    public void add(Shop shop) {
+        if (hasLocation(shop)) {
+            stringRedisTemplate.opsForGeo().add(SHOP_GEO_KEY + shop.getTypeId(),
+                    new Point(shop.getX(), shop.getY()), shop.getId().toString());
+        }
+    }
+
+    /**
+     * 商铺更新后同步坐标，类型变化时从原来的集合中删除
+     * @param before 更新前的商铺
+     * @param after 更新后的商铺
+     */
+    public void move(Shop before, Shop after) {
+        if (before != null && before.getTypeId() != null && !Objects.equals(before.getTypeId(), after.getTypeId())) {
+            stringRedisTemplate.opsForGeo().remove(SHOP_GEO_KEY + before.getTypeId(), before.getId().toString());
+        }
+        add(after);
+    }
+
+    /**
+     * 按距离由近到远查询附近的商铺
+     * @param typeId 商铺类型
+     * @param x 经度
+     * @param y 纬度
+     * @param from 跳过的数量
+     * @param end 查询的数量，包括跳过的部分
+     * @return 商铺 id 和距离，距离单位为米
+     */
+    public List<GeoResult<RedisGeoCommands.GeoLocation<String>>> search(Long typeId, double x, double y, int from, int end) {
+        // GEORADIUS 只能限制返回的总数，只能查询到 end 为止，再跳过前 from 条
+        GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo().radius(
+                SHOP_GEO_KEY + typeId,
+                new Circle(new Point(x, y), new Distance(SEARCH_RADIUS_METERS, RedisGeoCommands.DistanceUnit.METERS)),
+                RedisGeoCommands.GeoRadiusCommandArgs.newGeoRadiusArgs().includeDistance().sortAscending().limit(end));
+        if (results == null || results.getContent().size() <= from) {
+            return Collections.emptyList();
+        }
+        return results.getContent().subList(from, results.getContent().size());
+    }
+
+    private static boolean hasLocation(Shop shop) {
+        return shop != null && shop.getId() != null && shop.getTypeId() != null
+                && shop.getX() != null && shop.getY() != null;
+    }
+
+    private static byte[] toBytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,128 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.service.IShopService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.Resource;
+import java.util.List;
+
+/**
+ * 商铺名称的本地倒排索引，按名称关键字搜索时不访问数据库
+ * 启动时从 tb_shop 分批加载，之后根据 ShopChangedEvent 增量更新，并定期全量加载同步其它节点的修改
+ */
+@Slf4j
+@Component
+public class ShopNameIndex implements ApplicationRunner {
+
+    @Lazy
+    @Resource
+    private IShopService shopService;
+
+    @Value("${hmdp.search.enabled:true}")
+    private boolean enabled;
+    @Value("${hmdp.search.batch-size:1000}")
+    private int batchSize;
+
+    private volatile NGramIndex index = new NGramIndex();
+    // 全量加载中的新索引，加载期间的增量修改同时写入，加载完成后替换 index
+    private volatile NGramIndex building;
+    private volatile boolean ready;
+
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (enabled) {
+            try {
+                load();
+            } catch (Exception e) {
+                log.error("加载商铺名称索引失败", e);
+            }
+        }
+    }
+
+    /**
+     * 从数据库分批加载所有商铺名称，写入新的索引后整体替换，已经不存在的名称不会残留
+     * @return 加载的商铺数量
+     */
+    public synchronized long load() {
+        long begin = System.currentTimeMillis();
+        NGramIndex fresh = new NGramIndex();
+        building = fresh;
+        long count = 0;
+        try {
+            long lastId = 0;
+            while (true) {
+                List<Shop> shops = shopService.query()
+                        .select("id", "name")
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("limit " + batchSize)
+                        .list();
+                if (shops.isEmpty()) {
+                    break;
+                }
+                for (Shop shop : shops) {
+                    put(fresh, shop);
+                }
+                count += shops.size();
+                lastId = shops.get(shops.size() - 1).getId();
+                if (shops.size() < batchSize) {
+                    break;
+                }
+            }
+            index = fresh;
+        } finally {
+            building = null;
+        }
+        ready = true;
+        log.info("商铺名称索引加载完成，数量：{}，耗时：{}ms", count, System.currentTimeMillis() - begin);
+        return count;
+    }
+
+    /**
+     * 搜索名称包含关键字的商铺
+     * @param name 关键字
+     * @param offset 跳过的数量
+     * @param limit 返回的数量
+     * @return 按匹配程度排序的商铺 id
+     */
+    public List<Long> search(String name, int offset, int limit) {
+        return index.search(name, offset, limit);
+    }
+
+    @Scheduled(initialDelayString = "${hmdp.search.reload-interval-ms:600000}",
+            fixedDelayString = "${hmdp.search.reload-interval-ms:600000}")
+    public void reload() {
+        if (enabled) {
+            load();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShopChanged(ShopChangedEvent event) {
+        if (enabled) {
+            put(index, event.getAfter());
+            NGramIndex fresh = building;
+            if (fresh != null) {
+                put(fresh, event.getAfter());
+            }
+        }
+    }
+
+    private static void put(NGramIndex target, Shop shop) {
+        if (shop != null && shop.getId() != null && shop.getName() != null) {
+            target.put(shop.getId(), shop.getName());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.service.IShopService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.Resource;
+import java.util.List;
+
+/**
+ * 商铺的本地空间索引，按商铺类型分区，不依赖 redis GEO
+ * 启动时从 tb_shop 分批加载，之后根据 ShopChangedEvent 增量更新
+ * 每个节点只能看到自己的修改，其它节点的修改在定期全量加载后可见
+ */
+@Slf4j
+@Component
+public class ShopSpatialIndex implements ApplicationRunner {
+
+    @Lazy
+    @Resource
+    private IShopService shopService;
+
+    @Value("${hmdp.geo.engine:redis}")
+    private String engine;
+    @Value("${hmdp.geo.batch-size:1000}")
+    private int batchSize;
+
+    private final GridSpatialIndex index;
+    private volatile boolean ready;
+
+    public ShopSpatialIndex(@Value("${hmdp.geo.cell-degrees:0.01}") double cellDegrees) {
+        this.index = new GridSpatialIndex(cellDegrees);
+    }
+
+    public boolean isEnabled() {
+        return "local".equalsIgnoreCase(engine);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (isEnabled()) {
+            try {
+                load();
+            } catch (Exception e) {
+                log.error("加载商铺空间索引失败", e);
+            }
+        }
+    }
+
+    /**
+     * 从数据库分批加载所有商铺坐标
+     * @return 加载的商铺数量
+     */
+    public long load() {
+        long begin = System.currentTimeMillis();
+        long count = 0;
+        long lastId = 0;
+        while (true) {
+            List<Shop> shops = shopService.query()
+                    .select("id", "type_id", "x", "y")
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + batchSize)
+                    .list();
+            if (shops.isEmpty()) {
+                break;
+            }
+            for (Shop shop : shops) {
+                put(shop);
+            }
+            count += shops.size();
+            lastId = shops.get(shops.size() - 1).getId();
+            if (shops.size() < batchSize) {
+                break;
+            }
+        }
+        ready = true;
+        log.info("商铺空间索引加载完成，数量：{}，耗时：{}ms", count, System.currentTimeMillis() - begin);
+        return count;
+    }
+
+    /**
+     * 按距离由近到远查询附近的商铺
+     * @param typeId 商铺类型
+     * @param x 经度
+     * @param y 纬度
+     * @param maxMeters 最大距离
+     * @param outIds 返回的商铺 id，最多返回数组长度个
+     * @param outMeters 返回的距离
+     * @return 返回的数量
+     */
+    public int nearest(long typeId, double x, double y, double maxMeters, long[] outIds, double[] outMeters) {
+        return index.nearest(typeId, x, y, maxMeters, outIds, outMeters);
+    }
+
+    // 定期全量加载，同步其它节点的修改
+    @Scheduled(initialDelayString = "${hmdp.geo.reload-interval-ms:600000}",
+            fixedDelayString = "${hmdp.geo.reload-interval-ms:600000}")
+    public void reload() {
+        if (isEnabled()) {
+            load();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShopChanged(ShopChangedEvent event) {
+        if (isEnabled()) {
+            put(event.getAfter());
+        }
+    }
+
+    private void put(Shop shop) {
+        if (shop != null && shop.getId() != null && shop.getTypeId() != null
+                && shop.getX() != null && shop.getY() != null) {
+            index.put(shop.getTypeId(), shop.getId(), shop.getX(), shop.getY());
+        }
+    }
+}
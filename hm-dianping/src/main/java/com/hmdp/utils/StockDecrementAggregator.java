@@ -0,0 +1,184 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.VoucherOrderBatchResult;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 库存扣减聚合器：逐个提交的订单在一个短时间窗口内攒成一批，每个优惠券执行一次 stock = stock - N，
+ * 再把结果拆回每个订单。库存行的锁竞争次数随批次数增长，而不是随订单数增长
+ * 窗口从一批的第一个订单开始计时，凑满 max-batch 个订单时立即提交
+ */
+@Slf4j
+@Component
+// 关闭时先写入剩余的订单，再关闭预写日志
+@DependsOn("voucherOrderJournal")
+public class StockDecrementAggregator {
+
+    @Lazy
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
+    private final BlockingQueue<PendingOrder> pendingOrders;
+    private final long windowNanos;
+    private final int maxBatch;
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public StockDecrementAggregator(@Value("${hmdp.seckill.aggregate.window-ms:2}") long windowMillis,
+                                    @Value("${hmdp.seckill.aggregate.max-batch:500}") int maxBatch,
+                                    @Value("${hmdp.seckill.aggregate.capacity:65536}") int capacity) {
+        this.pendingOrders = new LinkedBlockingQueue<>(capacity);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maxBatch = maxBatch;
+        this.flusher = new Thread(this::handle, "stock-decrement-aggregator");
+        this.flusher.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher.start();
+    }
+
+    /**
+     * 提交一个订单，等待的订单达到 capacity 时阻塞
+     * @return 订单写入数据库或已经存在时为 true，重复下单或库存不足时为 false，写入异常时异常结束
+     */
+    public CompletableFuture<Boolean> submit(VoucherOrder voucherOrder) {
+        PendingOrder pendingOrder = new PendingOrder(voucherOrder);
+        try {
+            pendingOrders.put(pendingOrder);
+            submitted.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pendingOrder.future.completeExceptionally(e);
+        }
+        return pendingOrder.future;
+    }
+
+    private void handle() {
+        List<PendingOrder> batch = new ArrayList<>(maxBatch);
+        while (running || !pendingOrders.isEmpty()) {
+            try {
+                // 1.等待一批的第一个订单
+                PendingOrder first = pendingOrders.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // 2.窗口内继续收集，凑满一批时立即提交
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatch) {
+                    pendingOrders.drainTo(batch, maxBatch - batch.size());
+                    long wait = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatch || wait <= 0) {
+                        break;
+                    }
+                    PendingOrder next = pendingOrders.poll(wait, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                // 3.一个事务内扣减库存并写入订单
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingOrder> batch) {
+        batches.increment();
+        List<VoucherOrder> orders = new ArrayList<>(batch.size());
+        for (PendingOrder pendingOrder : batch) {
+            orders.add(pendingOrder.voucherOrder);
+        }
+        try {
+            complete(batch, voucherOrderService.createVoucherOrders(orders));
+            return;
+        } catch (Exception e) {
+            log.error("批量扣减库存异常，改为逐个写入，订单数：{}", batch.size(), e);
+        }
+        // 整批失败时逐个写入，避免一个订单的错误导致整批失败
+        for (PendingOrder pendingOrder : batch) {
+            try {
+                complete(Collections.singletonList(pendingOrder),
+                        voucherOrderService.createVoucherOrders(Collections.singletonList(pendingOrder.voucherOrder)));
+            } catch (Exception e) {
+                failed.increment();
+                log.error("写入订单异常，orderId：{}", pendingOrder.voucherOrder.getId(), e);
+                pendingOrder.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    // 把整批的结果拆回每个订单
+    private void complete(List<PendingOrder> batch, VoucherOrderBatchResult result) {
+        created.add(result.getCreated().size());
+        rejected.add(result.getRejected().size());
+        for (PendingOrder pendingOrder : batch) {
+            pendingOrder.future.complete(result.isPersisted(pendingOrder.voucherOrder.getId()));
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pending", pendingOrders.size());
+        stats.put("batches", batches.sum());
+        stats.put("submitted", submitted.sum());
+        stats.put("created", created.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("failed", failed.sum());
+        long b = batches.sum();
+        stats.put("avgBatchSize", b == 0 ? 0 : submitted.sum() / b);
+        return stats;
+    }
+
+    // 停止后写入剩余的订单
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        flusher.join(TimeUnit.SECONDS.toMillis(30));
+        if (flusher.isAlive()) {
+            log.warn("库存扣减聚合器未能在 30 秒内写入剩余订单：{}", pendingOrders.size());
+        }
+    }
+
+    private static class PendingOrder {
+        private final VoucherOrder voucherOrder;
+        private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        PendingOrder(VoucherOrder voucherOrder) {
+            this.voucherOrder = voucherOrder;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.net.NetUtil;
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.PendingMessagesSummary;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamInfo;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于 redis stream 消费者组的秒杀订单队列
+ * 秒杀脚本在判断资格的同时写入 stream，多个节点的多个消费者批量读取、批量写入数据库后再 ACK
+ * 消费者崩溃时，消息留在 pending-list 中，重启后先处理自己的 pending-list，
+ * 空闲时间过长的其它消费者的消息也会被认领后重新处理，数据库写入按订单 id 幂等
+ * 投递次数达到 max-deliveries 的消息移入死信 stream；ACK 后裁剪最早的 pending 消息之前的消息，stream 不会无限增长，
+ * 消费者落后时不裁剪，已经受理的订单不会在写入数据库前被删除（XTRIM MINID 需要 redis 6.2）
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "hmdp.seckill.queue", havingValue = "stream")
+public class StreamVoucherOrderQueue implements VoucherOrderQueue {
+
+    public static final String STREAM_KEY = "stream.orders";
+    public static final String GROUP = "g1";
+    // 多次处理失败的订单消息移到这里，由人工排查后重新投递
+    public static final String DEAD_LETTER_KEY = "stream.orders.dlq";
+    private static final long PENDING_RETRY_MS = 200;
+    private static final long PENDING_RETRY_MAX_MS = 10000;
+    private static final int MAX_LAG_COUNT = 10000;
+    private static final DefaultRedisScript<Long> TRIM_SCRIPT;
+
+    static {
+        TRIM_SCRIPT = new DefaultRedisScript<>();
+        TRIM_SCRIPT.setLocation(new ClassPathResource("stream_trim.lua"));
+        TRIM_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Lazy
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
+    @Value("${hmdp.seckill.stream.workers:2}")
+    private int workers;
+    @Value("${hmdp.seckill.stream.batch-size:100}")
+    private int batchSize;
+    @Value("${hmdp.seckill.stream.block-ms:2000}")
+    private long blockMillis;
+    // pending 消息空闲超过这个时间，说明所属的消费者已经崩溃，由其它消费者认领
+    @Value("${hmdp.seckill.stream.claim-idle-ms:60000}")
+    private long claimIdleMillis;
+    // 一条消息最多投递的次数，达到后移入死信 stream
+    @Value("${hmdp.seckill.stream.max-deliveries:10}")
+    private long maxDeliveries;
+    // 两次裁剪 stream 的最小间隔
+    @Value("${hmdp.seckill.stream.trim-interval-ms:1000}")
+    private long trimIntervalMillis;
+
+    private ExecutorService executor;
+    private volatile boolean running = true;
+    // 消费者名称前缀，默认为主机名，同一台机器上重启后名称不变
+    @Value("${hmdp.seckill.stream.consumer:}")
+    private String consumerPrefix;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder persisted = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+    private final LongAdder persistNanos = new LongAdder();
+    private final LongAdder trimmed = new LongAdder();
+    private final AtomicLong lastTrimMillis = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        // 1.创建消费者组，已经存在时忽略
+        try {
+            stringRedisTemplate.opsForStream().createGroup(STREAM_KEY, ReadOffset.from("0"), GROUP);
+        } catch (Exception e) {
+            log.debug("消费者组已经存在：{}", e.getMessage());
+        }
+        // 2.启动消费者，消费者名称在进程重启后保持不变，重启后可以继续处理自己的 pending-list
+        if (StrUtil.isBlank(consumerPrefix)) {
+            consumerPrefix = NetUtil.getLocalHostName();
+        }
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "voucher-order-stream-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workers; i++) {
+            String name = consumerPrefix + "-" + i;
+            executor.submit(() -> consume(name));
+        }
+    }
+
+    @Override
+    public String streamKey() {
+        return STREAM_KEY;
+    }
+
+    @Override
+    public boolean offer(VoucherOrder voucherOrder) {
+        // 订单已经在秒杀脚本中写入 stream
+        return true;
+    }
+
+    private void consume(String name) {
+        Consumer consumer = Consumer.from(GROUP, name);
+        // 启动时先处理上次没有 ACK 的消息
+        handlePendingList(consumer);
+        while (running) {
+            try {
+                // 1.阻塞读取一批新消息 XREADGROUP GROUP g1 c1 COUNT n BLOCK 2000 STREAMS stream.orders >
+                List<MapRecord<String, Object, Object>> records = read(consumer,
+                        StreamReadOptions.empty().count(batchSize).block(Duration.ofMillis(blockMillis)),
+                        ReadOffset.lastConsumed());
+                if (records == null || records.isEmpty()) {
+                    // 2.没有新消息时，认领其它消费者遗留的消息
+                    if (claimIdle(consumer) > 0) {
+                        handlePendingList(consumer);
+                    }
+                    continue;
+                }
+                // 3.批量写入数据库并 ACK
+                handle(records);
+            } catch (Exception e) {
+                log.error("处理订单消息异常", e);
+                handlePendingList(consumer);
+            }
+        }
+    }
+
+    // 处理 pending-list 中已经读取但没有 ACK 的消息，投递次数超过 max-deliveries 的消息移入死信 stream
+    private void handlePendingList(Consumer consumer) {
+        int failures = 0;
+        while (running) {
+            try {
+                deadLetter(consumer);
+                List<MapRecord<String, Object, Object>> records = read(consumer,
+                        StreamReadOptions.empty().count(batchSize), ReadOffset.from("0"));
+                if (records == null || records.isEmpty()) {
+                    return;
+                }
+                if (handleOrRetryEach(records)) {
+                    failures = 0;
+                    continue;
+                }
+            } catch (Exception e) {
+                log.error("处理 pending-list 异常", e);
+            }
+            // 失败时退避，避免数据库短暂不可用时很快用完投递次数
+            failures++;
+            try {
+                Thread.sleep(Math.min(PENDING_RETRY_MAX_MS, PENDING_RETRY_MS << Math.min(failures, 10)));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // 整批写入失败时逐条重试，只有有问题的消息留在 pending-list 中，返回是否全部成功
+    private boolean handleOrRetryEach(List<MapRecord<String, Object, Object>> records) {
+        try {
+            handle(records);
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("批量处理 pending 消息失败，逐条重试，数量：{}", records.size(), e);
+        }
+        boolean success = true;
+        for (MapRecord<String, Object, Object> record : records) {
+            try {
+                handle(Collections.singletonList(record));
+            } catch (RuntimeException e) {
+                log.error("处理订单消息失败，id：{}", record.getId(), e);
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    // 把本消费者 pending-list 中投递次数达到上限的消息写入死信 stream 后 ACK，不再重试
+    private void deadLetter(Consumer consumer) {
+        PendingMessages pending = stringRedisTemplate.opsForStream()
+                .pending(STREAM_KEY, consumer, Range.unbounded(), (long) batchSize);
+        for (PendingMessage message : pending) {
+            if (message.getTotalDeliveryCount() < maxDeliveries) {
+                continue;
+            }
+            String id = message.getIdAsString();
+            List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                    .range(STREAM_KEY, Range.closed(id, id));
+            if (records != null && !records.isEmpty()) {
+                Map<Object, Object> value = new LinkedHashMap<>(records.get(0).getValue());
+                value.put("sourceId", id);
+                stringRedisTemplate.opsForStream().add(DEAD_LETTER_KEY, value);
+            }
+            stringRedisTemplate.opsForStream().acknowledge(STREAM_KEY, GROUP, message.getId());
+            deadLettered.increment();
+            log.error("订单消息投递 {} 次仍然失败，移入死信 stream：{}，id：{}",
+                    message.getTotalDeliveryCount(), DEAD_LETTER_KEY, id);
+        }
+    }
+
+    // 按消费者组读取，只读一个 stream，泛型可变参数的警告可以忽略
+    @SuppressWarnings("unchecked")
+    private List<MapRecord<String, Object, Object>> read(Consumer consumer, StreamReadOptions options,
+                                                         ReadOffset offset) {
+        return stringRedisTemplate.opsForStream().read(consumer, options, StreamOffset.create(STREAM_KEY, offset));
+    }
+
+    private void handle(List<MapRecord<String, Object, Object>> records) {
+        batches.increment();
+        received.add(records.size());
+        List<VoucherOrder> orders = new ArrayList<>(records.size());
+        RecordId[] ids = new RecordId[records.size()];
+        for (int i = 0; i < records.size(); i++) {
+            MapRecord<String, Object, Object> record = records.get(i);
+            orders.add(BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true));
+            ids[i] = record.getId();
+        }
+        long begin = System.nanoTime();
+        try {
+            persisted.add(voucherOrderService.createVoucherOrders(orders).getCreated().size());
+        } catch (RuntimeException e) {
+            failed.add(records.size());
+            throw e;
+        } finally {
+            persistNanos.add(System.nanoTime() - begin);
+        }
+        // 写入成功后 ACK，失败时消息留在 pending-list 中重试
+        stringRedisTemplate.opsForStream().acknowledge(STREAM_KEY, GROUP, ids);
+        trim();
+    }
+
+    // 删除消费者组已经确认的消息，多个消费者之间按 trim-interval-ms 限制频率
+    private void trim() {
+        long now = System.currentTimeMillis();
+        long last = lastTrimMillis.get();
+        if (now - last < trimIntervalMillis || !lastTrimMillis.compareAndSet(last, now)) {
+            return;
+        }
+        try {
+            Long count = stringRedisTemplate.execute(TRIM_SCRIPT, Collections.singletonList(STREAM_KEY), GROUP);
+            if (count != null) {
+                trimmed.add(count);
+            }
+        } catch (Exception e) {
+            // 消息已经 ACK，裁剪失败只是 stream 暂时变长，下次再裁剪
+            log.warn("裁剪订单 stream 失败：{}", e.getMessage());
+        }
+    }
+
+    // 认领空闲时间过长的 pending 消息，返回认领的数量
+    private int claimIdle(Consumer consumer) {
+        PendingMessages pending = stringRedisTemplate.opsForStream()
+                .pending(STREAM_KEY, GROUP, Range.unbounded(), batchSize);
+        List<String> ids = new ArrayList<>();
+        for (PendingMessage message : pending) {
+            if (!message.getConsumerName().equals(consumer.getName())
+                    && message.getElapsedTimeSinceLastDelivery().toMillis() >= claimIdleMillis) {
+                ids.add(message.getIdAsString());
+            }
+        }
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        List<RecordId> claimed = stringRedisTemplate.execute((RedisCallback<List<RecordId>>) connection ->
+                connection.streamCommands().xClaimJustId(STREAM_KEY.getBytes(StandardCharsets.UTF_8), GROUP,
+                        consumer.getName(), RedisStreamCommands.XClaimOptions.minIdleMs(claimIdleMillis)
+                                .ids(ids.toArray(new String[0]))));
+        int count = claimed == null ? 0 : claimed.size();
+        if (count > 0) {
+            log.warn("认领其它消费者遗留的订单消息：{}", count);
+        }
+        return count;
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("type", "stream");
+        Long length = stringRedisTemplate.opsForStream().size(STREAM_KEY);
+        PendingMessagesSummary summary = stringRedisTemplate.opsForStream().pending(STREAM_KEY, GROUP);
+        stats.put("streamLength", length);
+        // 还没有投递给消费者组的消息数，即消费延迟，最多统计 MAX_LAG_COUNT 条
+        stats.put("lag", lag());
+        // 已经读取但没有 ACK 的消息数
+        stats.put("pending", summary == null ? 0 : summary.getTotalPendingMessages());
+        stats.put("batches", batches.sum());
+        stats.put("received", received.sum());
+        stats.put("persisted", persisted.sum());
+        stats.put("failed", failed.sum());
+        stats.put("deadLettered", deadLettered.sum());
+        stats.put("trimmed", trimmed.sum());
+        stats.put("deadLetterLength", stringRedisTemplate.opsForStream().size(DEAD_LETTER_KEY));
+        long b = batches.sum();
+        stats.put("avgBatchSize", b == 0 ? 0 : received.sum() / b);
+        long nanos = persistNanos.sum();
+        // 写入数据库时的吞吐量，单位条/秒
+        stats.put("persistPerSecond", nanos == 0 ? 0 : received.sum() * 1000000000L / nanos);
+        return stats;
+    }
+
+    private long lag() {
+        StreamInfo.XInfoGroup group = stringRedisTemplate.opsForStream().groups(STREAM_KEY).stream()
+                .filter(g -> GROUP.equals(g.groupName()))
+                .findFirst().orElse(null);
+        if (group == null) {
+            return 0;
+        }
+        String lastDeliveredId = group.lastDeliveredId();
+        List<MapRecord<String, Object, Object>> undelivered = stringRedisTemplate.opsForStream().range(STREAM_KEY,
+                Range.rightUnbounded(Range.Bound.exclusive(lastDeliveredId)),
+                RedisZSetCommands.Limit.limit().count(MAX_LAG_COUNT));
+        return undelivered == null ? 0 : undelivered.size();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        executor.shutdown();
+        executor.awaitTermination(blockMillis + 5000, TimeUnit.MILLISECONDS);
+    }
+}
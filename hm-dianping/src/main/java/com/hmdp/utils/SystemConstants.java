@@ -5,4 +5,6 @@ public class SystemConstants {
     public static final String USER_NICK_NAME_PREFIX = "user_";
     public static final int DEFAULT_PAGE_SIZE = 5;
     public static final int MAX_PAGE_SIZE = 10;
+    // 分页查询最多翻到的页数，更深的页需要按距离或索引取出前面所有的结果
+    public static final int MAX_PAGE = 100;
 }
@@ -0,0 +1,176 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 内存队列模式下秒杀订单的预写日志
+ * 订单放入队列前写入日志，事务提交后写入检查点，启动时把还没有检查点的订单重新写入数据库
+ * stream 模式下订单已经持久化在 redis 中，不使用日志
+ */
+@Slf4j
+@Component
+public class VoucherOrderJournal implements ApplicationRunner {
+
+    @Lazy
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
+    @Value("${hmdp.seckill.journal.enabled:true}")
+    private boolean enabled;
+    @Value("${hmdp.seckill.queue:blocking}")
+    private String queueType;
+    @Value("${hmdp.seckill.journal.dir:data/order-journal}")
+    private String dir;
+    @Value("${hmdp.seckill.journal.segment-bytes:67108864}")
+    private int segmentBytes;
+    @Value("${hmdp.seckill.journal.sync-interval-ms:10}")
+    private long syncIntervalMillis;
+    @Value("${hmdp.seckill.journal.compact-interval-ms:60000}")
+    private long compactIntervalMillis;
+    @Value("${hmdp.seckill.journal.replay-batch-size:500}")
+    private int replayBatchSize;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "order-journal-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile OrderJournal journal;
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (!enabled || "stream".equals(queueType)) {
+            return;
+        }
+        journal = new OrderJournal(Paths.get(dir), segmentBytes);
+        // 批量刷盘：写入只进入页缓存，由这里按固定间隔刷到磁盘
+        executor.scheduleWithFixedDelay(this::safeSync, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        executor.scheduleWithFixedDelay(this::safeCompact, compactIntervalMillis, compactIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 启动时重放上次没有写入数据库的订单，订单写入按 id 幂等
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        OrderJournal journal = this.journal;
+        if (journal == null) {
+            return;
+        }
+        List<VoucherOrder> orders = journal.pendingOrders();
+        if (orders.isEmpty()) {
+            return;
+        }
+        long begin = System.currentTimeMillis();
+        int persisted = 0;
+        for (int from = 0; from < orders.size(); from += replayBatchSize) {
+            List<VoucherOrder> batch = orders.subList(from, Math.min(from + replayBatchSize, orders.size()));
+            try {
+                persisted += voucherOrderService.createVoucherOrders(batch).getCreated().size();
+            } catch (Exception e) {
+                // 保留在日志中，下次启动再重放
+                log.error("重放订单失败，数量：{}", batch.size(), e);
+            }
+        }
+        log.info("重放预写日志完成，订单数：{}，写入：{}，耗时：{} ms",
+                orders.size(), persisted, System.currentTimeMillis() - begin);
+    }
+
+    /**
+     * 追加一个已受理的订单
+     * @return 写入失败时返回 false，调用方应拒绝这个订单
+     */
+    public boolean append(VoucherOrder voucherOrder) {
+        OrderJournal journal = this.journal;
+        if (journal == null) {
+            return true;
+        }
+        try {
+            journal.append(voucherOrder);
+            return true;
+        } catch (Exception e) {
+            log.error("写入预写日志失败，orderId：{}", voucherOrder.getId(), e);
+            return false;
+        }
+    }
+
+    /**
+     * 订单已经写入数据库或已经取消
+     */
+    public void checkpoint(Collection<Long> orderIds) {
+        OrderJournal journal = this.journal;
+        if (journal == null || orderIds.isEmpty()) {
+            return;
+        }
+        try {
+            journal.checkpoint(orderIds);
+        } catch (Exception e) {
+            // 没有检查点的订单在下次启动时重放，写入按 id 幂等
+            log.warn("写入检查点失败，数量：{}", orderIds.size(), e);
+        }
+    }
+
+    public void checkpoint(Long orderId) {
+        checkpoint(Collections.singletonList(orderId));
+    }
+
+    public Map<String, Object> stats() {
+        OrderJournal journal = this.journal;
+        if (journal == null) {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("enabled", false);
+            return stats;
+        }
+        return journal.stats();
+    }
+
+    private void safeSync() {
+        try {
+            journal.sync();
+        } catch (Exception e) {
+            log.error("预写日志刷盘失败", e);
+        }
+    }
+
+    private void safeCompact() {
+        try {
+            int copied = journal.compact();
+            if (copied > 0) {
+                log.info("压缩预写日志，复制订单数：{}", copied);
+            }
+        } catch (Exception e) {
+            log.error("压缩预写日志失败", e);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+        OrderJournal journal = this.journal;
+        if (journal != null) {
+            journal.close();
+        }
+    }
+}
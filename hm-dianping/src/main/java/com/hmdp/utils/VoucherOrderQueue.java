@@ -0,0 +1,29 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.VoucherOrder;
+
+import java.util.Map;
+
+/**
+ * 秒杀订单队列：秒杀资格判断通过后，订单放入队列，由后台线程写入数据库
+ */
+public interface VoucherOrderQueue {
+
+    /**
+     * 订单 stream 的 key，不为 null 时秒杀脚本直接把订单写入 stream，不再调用 offer
+     */
+    default String streamKey() {
+        return null;
+    }
+
+    /**
+     * 放入队列，不阻塞；streamKey 不为 null 时订单已经由秒杀脚本写入 stream，直接返回 true
+     * @return 队列已满时返回 false
+     */
+    boolean offer(VoucherOrder voucherOrder);
+
+    /**
+     * 队列的运行状态
+     */
+    Map<String, Object> stats();
+}
@@ -0,0 +1,12 @@
+-- 布隆过滤器新增 id：写入过滤器的位，正在重建时同时写入临时 key，替换后不会丢失
+-- KEYS[1] 过滤器 key，KEYS[2] 重建时的临时 key
+-- ARGV 各个哈希函数对应的位
+
+local rebuilding = redis.call('exists', KEYS[2]) == 1
+for i = 1, #ARGV do
+    redis.call('setbit', KEYS[1], ARGV[i], 1)
+    if rebuilding then
+        redis.call('setbit', KEYS[2], ARGV[i], 1)
+    end
+end
+return 0
@@ -0,0 +1,13 @@
+-- 布隆过滤器重建完成：把从数据库重建的位合并到临时 key，再原子替换过滤器 key
+-- KEYS[1] 过滤器 key，KEYS[2] 重建期间接收新增 id 的临时 key，KEYS[3] 从数据库重建的 key
+
+if (redis.call('exists', KEYS[2]) == 0) then
+    -- 临时 key 已经过期，重建期间新增的 id 可能丢失，放弃本次替换
+    redis.call('del', KEYS[3])
+    return 0
+end
+redis.call('bitop', 'or', KEYS[2], KEYS[2], KEYS[3])
+redis.call('del', KEYS[3])
+redis.call('rename', KEYS[2], KEYS[1])
+redis.call('persist', KEYS[1])
+return 1
@@ -65,6 +65,26 @@ CREATE TABLE `tb_blog_comments`  (
 -- Records of tb_blog_comments
 -- ----------------------------
 
+-- ----------------------------
+-- Table structure for tb_cache_outbox
+-- ----------------------------
+DROP TABLE IF EXISTS `tb_cache_outbox`;
+CREATE TABLE `tb_cache_outbox`  (
+  `id` bigint(20) UNSIGNED NOT NULL AUTO_INCREMENT COMMENT '主键',
+  `cache_key` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL COMMENT '需要删除的缓存key',
+  `status` tinyint(1) UNSIGNED NOT NULL DEFAULT 0 COMMENT '状态，0：等待删除；1：等待延迟双删；2：失败',
+  `retry_count` int(8) UNSIGNED NOT NULL DEFAULT 0 COMMENT '已重试次数',
+  `next_time` timestamp(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) COMMENT '下次处理时间',
+  `create_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `update_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`id`) USING BTREE,
+  INDEX `idx_status_next_time`(`status`, `next_time`) USING BTREE
+) ENGINE = InnoDB AUTO_INCREMENT = 1 CHARACTER SET = utf8mb4 COLLATE = utf8mb4_general_ci ROW_FORMAT = Compact;
+
+-- ----------------------------
+-- Records of tb_cache_outbox
+-- ----------------------------
+
 -- ----------------------------
 -- Table structure for tb_follow
 -- ----------------------------
@@ -81,6 +101,25 @@ CREATE TABLE `tb_follow`  (
 -- Records of tb_follow
 -- ----------------------------
 
+-- ----------------------------
+-- Table structure for tb_seckill_stock_bucket
+-- ----------------------------
+DROP TABLE IF EXISTS `tb_seckill_stock_bucket`;
+CREATE TABLE `tb_seckill_stock_bucket`  (
+  `id` bigint(20) UNSIGNED NOT NULL AUTO_INCREMENT COMMENT '主键',
+  `voucher_id` bigint(20) UNSIGNED NOT NULL COMMENT '关联的秒杀优惠券的id',
+  `bucket` int(8) UNSIGNED NOT NULL COMMENT '分桶编号，从 0 开始',
+  `stock` int(8) NOT NULL COMMENT '分桶的库存',
+  `create_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `update_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `uk_voucher_bucket`(`voucher_id`, `bucket`) USING BTREE
+) ENGINE = InnoDB AUTO_INCREMENT = 1 CHARACTER SET = utf8mb4 COLLATE = utf8mb4_general_ci COMMENT = '秒杀库存分桶表，热点秒杀券的库存拆分到多行' ROW_FORMAT = Compact;
+
+-- ----------------------------
+-- Records of tb_seckill_stock_bucket
+-- ----------------------------
+
 -- ----------------------------
 -- Table structure for tb_seckill_voucher
 -- ----------------------------
@@ -0,0 +1,22 @@
+-- 秒杀资格判断：库存充足且用户没有下过单时扣减库存、记录用户，返回 0
+-- KEYS[1] 库存 key，KEYS[2] 已下单用户的 set，KEYS[3] 订单 stream（可选）
+-- ARGV[1] 用户id，ARGV[2] 订单id，ARGV[3] 优惠券id
+-- 返回值：0 成功，1 库存不足，2 重复下单
+
+-- 1.判断库存是否充足
+local stock = tonumber(redis.call('get', KEYS[1]))
+if (stock == nil or stock <= 0) then
+    return 1
+end
+-- 2.判断用户是否下过单
+if (redis.call('sismember', KEYS[2], ARGV[1]) == 1) then
+    return 2
+end
+-- 3.扣减库存，记录用户
+redis.call('incrby', KEYS[1], -1)
+redis.call('sadd', KEYS[2], ARGV[1])
+-- 4.传入 stream 时，在同一个脚本中写入订单消息，资格和订单要么都成功要么都失败
+if (#KEYS >= 3) then
+    redis.call('xadd', KEYS[3], '*', 'userId', ARGV[1], 'id', ARGV[2], 'voucherId', ARGV[3])
+end
+return 0
@@ -0,0 +1,28 @@
+-- 分桶库存的秒杀资格判断：从用户对应的分桶开始，找到一个还有库存的分桶扣减
+-- KEYS[1..n] 各个分桶的库存 key，KEYS[n+1] 已下单用户的 set，KEYS[n+2] 订单 stream（可选）
+-- ARGV[1] 用户id，ARGV[2] 订单id，ARGV[3] 优惠券id，ARGV[4] 分桶数 n，ARGV[5] 用户对应的分桶，从 0 开始
+-- 返回值：0 成功，1 所有分桶都没有库存，2 重复下单
+
+local n = tonumber(ARGV[4])
+local start = tonumber(ARGV[5])
+local orderKey = KEYS[n + 1]
+-- 1.判断用户是否下过单
+if (redis.call('sismember', orderKey, ARGV[1]) == 1) then
+    return 2
+end
+-- 2.从用户对应的分桶开始依次查找有库存的分桶
+for i = 0, n - 1 do
+    local key = KEYS[(start + i) % n + 1]
+    local stock = tonumber(redis.call('get', key))
+    if (stock ~= nil and stock > 0) then
+        -- 3.扣减库存，记录用户
+        redis.call('incrby', key, -1)
+        redis.call('sadd', orderKey, ARGV[1])
+        -- 4.传入 stream 时，在同一个脚本中写入订单消息
+        if (#KEYS >= n + 2) then
+            redis.call('xadd', KEYS[n + 2], '*', 'userId', ARGV[1], 'id', ARGV[2], 'voucherId', ARGV[3])
+        end
+        return 0
+    end
+end
+return 1
@@ -0,0 +1,38 @@
+-- 重新分配分桶库存：有分桶的库存不超过阈值，并且重新分配后每个分桶都超过阈值时，平均分配到所有分桶
+-- KEYS[1..n] 各个分桶的库存 key
+-- ARGV[1] 阈值，0 表示只在分桶耗尽时重新分配
+-- 返回值：1 重新分配，0 不需要
+
+local n = #KEYS
+local threshold = tonumber(ARGV[1])
+local total = 0
+local drained = false
+local stocks = {}
+for i = 1, n do
+    local stock = tonumber(redis.call('get', KEYS[i]))
+    if (stock == nil) then
+        -- 库存还没有加载，不处理
+        return 0
+    end
+    if (stock <= threshold) then
+        drained = true
+    end
+    if (stock < 0) then
+        stock = 0
+    end
+    stocks[i] = stock
+    total = total + stock
+end
+if (not drained or total < n * (threshold + 1)) then
+    return 0
+end
+local base = math.floor(total / n)
+local rest = total % n
+for i = 1, n do
+    local stock = base
+    if (i <= rest) then
+        stock = stock + 1
+    end
+    redis.call('set', KEYS[i], stock)
+end
+return 1
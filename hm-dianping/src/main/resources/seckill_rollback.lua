@@ -0,0 +1,14 @@
+-- 撤销秒杀资格：订单没有进入队列或者没有写入数据库时归还库存，删除用户记录
+-- KEYS[1] 库存 key，KEYS[2] 已下单用户的 set，KEYS[3] 订单的撤销标记（可选，消息重复投递时只撤销一次）
+-- ARGV[1] 用户id，ARGV[2] 为 1 时用户已经有别的订单，只归还库存，保留用户记录，ARGV[3] 撤销标记的有效期（秒）
+if (KEYS[3] and not redis.call('set', KEYS[3], '1', 'NX', 'EX', ARGV[3])) then
+    return 0
+end
+if (ARGV[2] == '1') then
+    redis.call('incrby', KEYS[1], 1)
+    return 0
+end
+if (redis.call('srem', KEYS[2], ARGV[1]) == 1) then
+    redis.call('incrby', KEYS[1], 1)
+end
+return 0
@@ -0,0 +1,24 @@
+-- 加载秒杀库存：库存 key 不存在时写入，库存 key 都不存在时在同一个脚本中补上已下单的用户
+-- 秒杀脚本不会看到有库存但还没有已下单用户的中间状态，下过单的用户不能重复下单
+-- KEYS[1..n] 库存 key，不分桶时只有一个，KEYS[n+1] 已下单用户的 set
+-- ARGV[1..n] 各个库存 key 的库存，ARGV[n+1..] 已下单的用户id
+-- 返回值：写入的库存 key 数量
+
+local n = #KEYS - 1
+local absent = 0
+for i = 1, n do
+    if (redis.call('exists', KEYS[i]) == 0) then
+        absent = absent + 1
+    end
+end
+-- 1.库存都是新写入的，先补上已下单的用户
+if (absent == n) then
+    for i = n + 1, #ARGV do
+        redis.call('sadd', KEYS[n + 1], ARGV[i])
+    end
+end
+-- 2.写入不存在的库存 key
+for i = 1, n do
+    redis.call('set', KEYS[i], ARGV[i], 'NX')
+end
+return absent
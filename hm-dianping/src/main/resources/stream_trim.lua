@@ -0,0 +1,34 @@
+-- 裁剪订单 stream：只删除消费者组已经确认的消息，没有 ACK 和还没有读取的消息都保留
+-- 有 pending 消息时从最早的 pending 消息开始保留，否则从消费者组最后读取的消息开始保留
+-- KEYS[1] 订单 stream
+-- ARGV[1] 消费者组
+-- 返回值：删除的消息数
+
+-- 1.最早的 pending 消息
+local pending = redis.call('xpending', KEYS[1], ARGV[1])
+local minId = nil
+if (pending[1] > 0) then
+    minId = pending[2]
+else
+    -- 2.没有 pending 消息，找到消费者组最后读取的消息，每个消费者组是 key、value 交替的数组
+    local groups = redis.call('xinfo', 'groups', KEYS[1])
+    for _, group in ipairs(groups) do
+        local name = nil
+        local lastDeliveredId = nil
+        for i = 1, #group, 2 do
+            if (group[i] == 'name') then
+                name = group[i + 1]
+            elseif (group[i] == 'last-delivered-id') then
+                lastDeliveredId = group[i + 1]
+            end
+        end
+        if (name == ARGV[1]) then
+            minId = lastDeliveredId
+        end
+    end
+end
+if (minId == nil) then
+    return 0
+end
+-- 3.删除比 minId 更早的消息，近似裁剪按整个节点删除，效率更高
+return redis.call('xtrim', KEYS[1], 'MINID', '~', minId)
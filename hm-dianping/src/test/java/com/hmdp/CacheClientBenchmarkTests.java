@@ -0,0 +1,96 @@
+package com.hmdp;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheStrategy;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 三种缓存策略在高并发下的对比：同一个 key 缓存失效后，多个线程同时查询
+ * 需要本地启动 redis
+ */
+@SpringBootTest
+public class CacheClientBenchmarkTests {
+
+    private static final String KEY_PREFIX = "cache:bench:";
+    private static final int THREADS = 200;
+    private static final int ROUNDS = 5;
+
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Test
+    public void benchmarkStrategies() throws InterruptedException {
+        for (CacheStrategy strategy : CacheStrategy.values()) {
+            benchmark(strategy);
+        }
+    }
+
+    private void benchmark(CacheStrategy strategy) throws InterruptedException {
+        AtomicInteger dbLoads = new AtomicInteger();
+        long[] latencies = new long[THREADS * ROUNDS];
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        long begin = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            long id = round;
+            // 逻辑过期需要预热，写入一个已经过期的值
+            stringRedisTemplate.delete(KEY_PREFIX + id);
+            if (strategy == CacheStrategy.LOGICAL_EXPIRE) {
+                cacheClient.setWithLogicalExpire(KEY_PREFIX + id, new Shop().setId(id), 0L, TimeUnit.SECONDS);
+            }
+            CountDownLatch latch = new CountDownLatch(THREADS);
+            for (int i = 0; i < THREADS; i++) {
+                int index = round * THREADS + i;
+                pool.submit(() -> {
+                    long start = System.nanoTime();
+                    query(strategy, id, dbLoads);
+                    latencies[index] = System.nanoTime() - start;
+                    latch.countDown();
+                });
+            }
+            latch.await();
+        }
+        long total = System.nanoTime() - begin;
+        pool.shutdown();
+
+        Arrays.sort(latencies);
+        System.out.printf("%-15s 查询次数=%d 数据库查询=%d 耗时=%dms p50=%.2fms p99=%.2fms%n",
+                strategy, latencies.length, dbLoads.get(), TimeUnit.NANOSECONDS.toMillis(total),
+                latencies[latencies.length / 2] / 1e6, latencies[(int) (latencies.length * 0.99)] / 1e6);
+    }
+
+    // 直接调用各个策略，绕过本地缓存
+    private Shop query(CacheStrategy strategy, Long id, AtomicInteger dbLoads) {
+        Function<Long, Shop> dbFallback = shopId -> {
+            dbLoads.incrementAndGet();
+            try {
+                // 模拟数据库查询的耗时
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new Shop().setId(shopId).setName("bench");
+        };
+        switch (strategy) {
+            case MUTEX:
+                return cacheClient.queryWithMutex(KEY_PREFIX, id, Shop.class, dbFallback, 10L, TimeUnit.MINUTES);
+            case LOGICAL_EXPIRE:
+                return cacheClient.queryWithLogicalExpire(KEY_PREFIX, id, Shop.class, dbFallback, 10L, TimeUnit.MINUTES);
+            default:
+                return cacheClient.queryWithPassThrough(KEY_PREFIX, id, Shop.class, dbFallback, 10L, TimeUnit.MINUTES);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.hmdp;
+
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.service.ISeckillStockBucketService;
+import com.hmdp.service.ISeckillVoucherService;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 单行扣减库存与分桶扣减库存的吞吐量对比
+ * 每次扣减在一个事务中执行，扣减后休眠 1 毫秒模拟写入订单等操作，行锁一直持有到事务提交
+ * 需要本地启动 mysql
+ */
+@SpringBootTest
+public class SeckillStockBucketBenchmarkTests {
+
+    private static final long SINGLE_VOUCHER_ID = 990000001L;
+    private static final long BUCKET_VOUCHER_ID = 990000002L;
+    private static final int BUCKETS = 8;
+    private static final int THREADS = 64;
+    private static final int ORDERS = 5000;
+
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private ISeckillStockBucketService seckillStockBucketService;
+    @Resource
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    public void benchmarkDeduct() throws InterruptedException {
+        cleanUp();
+        try {
+            seckillVoucherService.save(voucher(SINGLE_VOUCHER_ID));
+            seckillVoucherService.save(voucher(BUCKET_VOUCHER_ID));
+            seckillStockBucketService.split(BUCKET_VOUCHER_ID, ORDERS, BUCKETS);
+
+            double single = run("单行扣减", hint -> seckillVoucherService.update()
+                    .setSql("stock = stock - 1")
+                    .eq("voucher_id", SINGLE_VOUCHER_ID)
+                    .gt("stock", 0)
+                    .update());
+            double bucket = run(BUCKETS + " 个分桶", hint -> seckillStockBucketService.deduct(BUCKET_VOUCHER_ID, 1));
+            System.out.printf("分桶吞吐量是单行的 %.1f 倍%n", bucket / single);
+
+            // 库存全部扣完，没有超卖
+            assertEquals(0, seckillVoucherService.getById(SINGLE_VOUCHER_ID).getStock().intValue());
+            int remaining = seckillStockBucketService.listBuckets(BUCKET_VOUCHER_ID).stream()
+                    .mapToInt(b -> b.getStock()).sum();
+            assertEquals(0, remaining);
+        } finally {
+            cleanUp();
+        }
+    }
+
+    private double run(String name, Deduct deduct) throws InterruptedException {
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger success = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch latch = new CountDownLatch(THREADS);
+        long begin = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            pool.submit(() -> {
+                try {
+                    int hint;
+                    while ((hint = next.getAndIncrement()) < ORDERS) {
+                        int h = hint;
+                        Boolean ok = transactionTemplate.execute(status -> {
+                            boolean deducted = deduct.apply(h);
+                            sleep();
+                            return deducted;
+                        });
+                        if (Boolean.TRUE.equals(ok)) {
+                            success.incrementAndGet();
+                        }
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        latch.await();
+        pool.shutdown();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        double throughput = success.get() / seconds;
+        System.out.printf("%-8s %d 个线程 成功 %d 次 %.0f 次/秒%n", name, THREADS, success.get(), throughput);
+        return throughput;
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void cleanUp() {
+        seckillVoucherService.removeById(SINGLE_VOUCHER_ID);
+        seckillVoucherService.removeById(BUCKET_VOUCHER_ID);
+        seckillStockBucketService.remove(seckillStockBucketService.query()
+                .eq("voucher_id", BUCKET_VOUCHER_ID).getWrapper());
+    }
+
+    private static SeckillVoucher voucher(long voucherId) {
+        SeckillVoucher voucher = new SeckillVoucher();
+        voucher.setVoucherId(voucherId);
+        voucher.setStock(ORDERS);
+        voucher.setBeginTime(LocalDateTime.now());
+        voucher.setEndTime(LocalDateTime.now().plusDays(1));
+        return voucher;
+    }
+
+    private interface Deduct {
+        boolean apply(long hint);
+    }
+}
@@ -0,0 +1,74 @@
+package com.hmdp;
+
+import com.hmdp.utils.GridSpatialIndex;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.geo.Circle;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 100 万商铺下 redis GEORADIUS 与本地网格空间索引的查询耗时对比
+ * 需要本地启动 redis
+ */
+@SpringBootTest
+public class ShopGeoBenchmarkTests {
+
+    private static final String KEY = "shop:geo:bench";
+    private static final int SHOPS = 1000000;
+    private static final int QUERIES = 10000;
+    private static final double MIN_X = 119.9, MAX_X = 120.4, MIN_Y = 30.1, MAX_Y = 30.5;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Test
+    public void benchmarkNearest() {
+        // 1.写入相同的数据
+        Random random = new Random(1);
+        GridSpatialIndex index = new GridSpatialIndex(0.01);
+        stringRedisTemplate.delete(KEY);
+        Map<byte[], Point> batch = new HashMap<>();
+        for (int i = 0; i < SHOPS; i++) {
+            double x = MIN_X + random.nextDouble() * (MAX_X - MIN_X);
+            double y = MIN_Y + random.nextDouble() * (MAX_Y - MIN_Y);
+            index.put(1, i, x, y);
+            batch.put(String.valueOf(i).getBytes(StandardCharsets.UTF_8), new Point(x, y));
+            if (batch.size() == 10000 || i == SHOPS - 1) {
+                Map<byte[], Point> points = batch;
+                stringRedisTemplate.execute((RedisCallback<Object>) connection ->
+                        connection.geoAdd(KEY.getBytes(StandardCharsets.UTF_8), points));
+                batch = new HashMap<>();
+            }
+        }
+        // 2.查询最近的 10 个商铺
+        RedisGeoCommands.GeoRadiusCommandArgs args = RedisGeoCommands.GeoRadiusCommandArgs.newGeoRadiusArgs()
+                .includeDistance().sortAscending().limit(10);
+        long begin = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            Point point = new Point(MIN_X + random.nextDouble() * (MAX_X - MIN_X), MIN_Y + random.nextDouble() * (MAX_Y - MIN_Y));
+            stringRedisTemplate.opsForGeo().radius(KEY,
+                    new Circle(point, new Distance(5000, RedisGeoCommands.DistanceUnit.METERS)), args);
+        }
+        System.out.printf("redis GEORADIUS 平均 %.2fus/次%n", (System.nanoTime() - begin) / 1000.0 / QUERIES);
+
+        long[] ids = new long[10];
+        double[] meters = new double[10];
+        begin = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            index.nearest(1, MIN_X + random.nextDouble() * (MAX_X - MIN_X), MIN_Y + random.nextDouble() * (MAX_Y - MIN_Y),
+                    5000, ids, meters);
+        }
+        System.out.printf("本地网格索引   平均 %.2fus/次%n", (System.nanoTime() - begin) / 1000.0 / QUERIES);
+        stringRedisTemplate.delete(KEY);
+    }
+}
@@ -0,0 +1,102 @@
+package com.hmdp;
+
+import com.hmdp.dto.VoucherOrderBatchResult;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 订单写入吞吐量：逐条 INSERT、JDBC 批处理（rewriteBatchedStatements 改写为多行 INSERT）和不同行数的多行 INSERT
+ * 需要本地启动 mysql
+ */
+@SpringBootTest
+public class VoucherOrderInsertBenchmarkTests {
+
+    // 测试订单的id从这里开始，测试前后删除
+    private static final long BASE_ID = 9000000000000000000L;
+    private static final long VOUCHER_ID = 990000003L;
+    private static final int ROWS = 20000;
+
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+    @Resource
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    public void benchmarkInsert() {
+        cleanUp();
+        try {
+            // 1.逐条 INSERT，每条一次网络往返
+            List<VoucherOrder> orders = orders(ROWS / 10);
+            long begin = System.nanoTime();
+            transactionTemplate.executeWithoutResult(status -> orders.forEach(voucherOrderService::save));
+            print("逐条 INSERT", orders.size(), System.nanoTime() - begin);
+            cleanUp();
+            // 2.JDBC 批处理
+            List<VoucherOrder> batch = orders(ROWS);
+            begin = System.nanoTime();
+            voucherOrderService.saveBatch(batch, 500);
+            print("JDBC 批处理 500", batch.size(), System.nanoTime() - begin);
+            cleanUp();
+            // 3.多行 INSERT
+            for (int batchSize : Arrays.asList(1, 10, 50, 100, 200, 500, 1000, 2000)) {
+                List<VoucherOrder> rows = orders(ROWS);
+                begin = System.nanoTime();
+                VoucherOrderBatchResult result = voucherOrderService.insertVoucherOrders(rows, batchSize);
+                print("多行 INSERT " + batchSize, rows.size(), System.nanoTime() - begin);
+                assertEquals(ROWS, result.getCreated().size());
+                cleanUp();
+            }
+        } finally {
+            cleanUp();
+        }
+    }
+
+    @Test
+    public void reportsPerRowFailures() {
+        cleanUp();
+        try {
+            List<VoucherOrder> orders = orders(10);
+            voucherOrderService.save(orders.get(3));
+            // 第 4 个订单主键冲突，整条语句失败后逐行写入
+            VoucherOrderBatchResult result = voucherOrderService.insertVoucherOrders(orders, 100);
+            assertEquals(9, result.getCreated().size());
+            assertEquals(Collections.singleton(orders.get(3).getId()), result.getExisting());
+            assertTrue(result.getRejected().isEmpty());
+            assertEquals(10, voucherOrderService.query().ge("id", BASE_ID).count());
+        } finally {
+            cleanUp();
+        }
+    }
+
+    private static void print(String name, int rows, long nanos) {
+        System.out.printf("%-16s %6d 行 %8.0f 行/秒%n", name, rows, rows * 1e9 / nanos);
+    }
+
+    private void cleanUp() {
+        voucherOrderService.remove(voucherOrderService.query().ge("id", BASE_ID).getWrapper());
+    }
+
+    private static List<VoucherOrder> orders(int n) {
+        List<VoucherOrder> orders = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            VoucherOrder order = new VoucherOrder();
+            order.setId(BASE_ID + i);
+            order.setUserId(1000L + i);
+            order.setVoucherId(VOUCHER_ID);
+            orders.add(order);
+        }
+        return orders;
+    }
+}
@@ -0,0 +1,35 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 不同期望误判率下布隆过滤器的位数、哈希函数个数、实际误判率和查询耗时，
+ * 默认不执行，用 mvn test -Dtest=BloomFilterBenchmarkTests 运行
+ */
+public class BloomFilterBenchmarkTests {
+
+    private static final int N = 1000000;
+
+    @Test
+    public void benchmark() {
+        for (double expected : new double[]{0.1, 0.01, 0.001}) {
+            BloomFilter filter = new BloomFilter(N, expected);
+            long begin = System.nanoTime();
+            for (long id = 1; id <= N; id++) {
+                filter.put(id);
+            }
+            long putNanos = System.nanoTime() - begin;
+            int falsePositives = 0;
+            begin = System.nanoTime();
+            for (long id = N + 1; id <= 2L * N; id++) {
+                if (filter.mightContain(id)) {
+                    falsePositives++;
+                }
+            }
+            long queryNanos = System.nanoTime() - begin;
+            System.out.printf("期望误判率=%.3f 位数=%d 哈希函数=%d 实际误判率=%.4f 写入 %.1f ns/个 查询 %.1f ns/个%n",
+                    expected, filter.numBits(), filter.numHashes(), (double) falsePositives / N,
+                    (double) putNanos / N, (double) queryNanos / N);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 本地布隆过滤器的误判率和与 redis 位图的转换，不同参数下的实际误判率和耗时见 BloomFilterBenchmarkTests
+ */
+public class BloomFilterTest {
+
+    @Test
+    public void noFalseNegativesAndFppWithinBound() {
+        int n = 100000;
+        BloomFilter filter = new BloomFilter(n, 0.01);
+        for (long id = 1; id <= n; id++) {
+            filter.put(id);
+        }
+        for (long id = 1; id <= n; id++) {
+            assertTrue(filter.mightContain(id));
+        }
+        int falsePositives = 0;
+        for (long id = n + 1; id <= 2L * n; id++) {
+            if (filter.mightContain(id)) {
+                falsePositives++;
+            }
+        }
+        double fpp = (double) falsePositives / n;
+        assertTrue(fpp < 0.02, "fpp=" + fpp);
+    }
+
+    @Test
+    public void redisBytesRoundTrip() {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        filter.put(42L);
+        filter.put(7L);
+        BloomFilter copy = new BloomFilter(1000, 0.01);
+        copy.mergeRedisBytes(filter.toRedisBytes());
+        assertTrue(copy.mightContain(42L));
+        assertTrue(copy.mightContain(7L));
+        assertFalse(copy.mightContain(43L));
+    }
+
+    @Test
+    public void redisBitOrder() {
+        // redis 中 SETBIT key 0 1 对应第一个字节的最高位
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        filter.set(0);
+        filter.set(9);
+        byte[] bytes = filter.toRedisBytes();
+        assertTrue((bytes[0] & 0x80) != 0);
+        assertTrue((bytes[1] & 0x40) != 0);
+    }
+}
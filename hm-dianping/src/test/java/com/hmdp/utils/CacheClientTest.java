@@ -0,0 +1,44 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CacheClientTest {
+
+    @Test
+    public void refreshesAfterExpire() {
+        assertTrue(CacheClient.shouldRefresh(1000, 1000, 0, 1.0, 0.5));
+        assertFalse(CacheClient.shouldRefresh(999, 1000, 0, 1.0, 0.5));
+    }
+
+    @Test
+    public void refreshesEarlyInProportionToRebuildTime() {
+        // 距离过期 100ms，重建耗时 200ms：随机数较小时提前刷新
+        assertTrue(CacheClient.shouldRefresh(900, 1000, 200, 1.0, 0.5));
+        assertFalse(CacheClient.shouldRefresh(900, 1000, 200, 1.0, 0.9));
+        // 距离过期很远时几乎不会提前刷新
+        assertFalse(CacheClient.shouldRefresh(0, 1000000, 200, 1.0, 0.001));
+        // beta 为 0 时关闭提前刷新
+        assertFalse(CacheClient.shouldRefresh(900, 1000, 200, 0, 0.001));
+    }
+
+    @Test
+    public void earlyRefreshesAreSpreadOverTime() {
+        // 同一时刻过期的 key，按随机数计算出的刷新时间分散在过期前的一段时间内
+        long expire = 100000;
+        long delta = 500;
+        int early = 0;
+        int samples = 10000;
+        java.util.Random random = new java.util.Random(1);
+        for (int i = 0; i < samples; i++) {
+            if (CacheClient.shouldRefresh(expire - 500, expire, delta, 1.0, 1 - random.nextDouble())) {
+                early++;
+            }
+        }
+        // P(-ln(u) >= 1) = 1/e
+        double ratio = (double) early / samples;
+        assertTrue(ratio > 0.33 && ratio < 0.40, "ratio=" + ratio);
+    }
+}
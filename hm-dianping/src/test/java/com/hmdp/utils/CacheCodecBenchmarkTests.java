@@ -0,0 +1,55 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static com.hmdp.utils.CacheCodecTest.redisData;
+import static com.hmdp.utils.CacheCodecTest.shop;
+
+/**
+ * json 与二进制编解码的性能对比，默认不执行，用 mvn test -Dtest=CacheCodecBenchmarkTests 运行
+ * 耗时为预热后多次循环的平均值，字节数即 redis 中 value 的大小
+ */
+public class CacheCodecBenchmarkTests {
+
+    private static final int WARMUP = 10000;
+    private static final int ITERATIONS = 50000;
+
+    private final JsonCacheCodec json = new JsonCacheCodec();
+    private final BinaryCacheCodec binary = new BinaryCacheCodec(json, Collections.singletonList(new ShopBinarySchema()));
+
+    @Test
+    public void benchmark() {
+        Shop shop = shop();
+        RedisData redisData = redisData(shop);
+        byte[] jsonShop = json.encode(shop);
+        byte[] binaryShop = binary.encode(shop);
+        byte[] jsonData = json.encodeWithExpire(redisData);
+        byte[] binaryData = binary.encodeWithExpire(redisData);
+
+        System.out.printf("Shop      字节数 json=%d binary=%d%n", jsonShop.length, binaryShop.length);
+        System.out.printf("RedisData 字节数 json=%d binary=%d%n", jsonData.length, binaryData.length);
+        report("Shop encode      json", () -> json.encode(shop));
+        report("Shop encode      binary", () -> binary.encode(shop));
+        report("Shop decode      json", () -> json.decode(jsonShop, Shop.class));
+        report("Shop decode      binary", () -> binary.decode(binaryShop, Shop.class));
+        report("RedisData encode json", () -> json.encodeWithExpire(redisData));
+        report("RedisData encode binary", () -> binary.encodeWithExpire(redisData));
+        report("RedisData decode json", () -> json.decodeWithExpire(jsonData, Shop.class));
+        report("RedisData decode binary", () -> binary.decodeWithExpire(binaryData, Shop.class));
+    }
+
+    private void report(String name, Runnable task) {
+        for (int i = 0; i < WARMUP; i++) {
+            task.run();
+        }
+        long begin = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            task.run();
+        }
+        System.out.printf("%-25s %8.0f ns/op%n", name, (double) (System.nanoTime() - begin) / ITERATIONS);
+    }
+
+}
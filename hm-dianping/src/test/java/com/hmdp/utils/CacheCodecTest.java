@@ -0,0 +1,110 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * json 与二进制编解码的正确性，性能对比见 CacheCodecBenchmarkTests
+ */
+public class CacheCodecTest {
+
+    private final JsonCacheCodec json = new JsonCacheCodec();
+    private final BinaryCacheCodec binary = new BinaryCacheCodec(json, Collections.singletonList(new ShopBinarySchema()));
+
+    @Test
+    public void roundTrip() {
+        Shop shop = shop();
+        assertEquals(shop, binary.decode(binary.encode(shop), Shop.class));
+
+        RedisData redisData = redisData(shop);
+        RedisData decoded = binary.decodeWithExpire(binary.encodeWithExpire(redisData), Shop.class);
+        assertEquals(redisData.getExpireTime(), decoded.getExpireTime());
+        assertEquals(redisData.getDelta(), decoded.getDelta());
+        assertEquals(shop, decoded.getData());
+    }
+
+    @Test
+    public void readsFormatVersion1() {
+        // 格式版本 1 没有重建耗时
+        Shop shop = shop();
+        BinaryWriter out = new BinaryWriter(256);
+        out.writeByte(0xCB).writeByte(1).writeByte(1).writeVarLong(1);
+        out.writeZigZag(1640995200000L);
+        new ShopBinarySchema().write(shop, out);
+        byte[] bytes = out.toByteArray();
+
+        RedisData decoded = binary.decodeWithExpire(bytes, Shop.class);
+        assertEquals(LocalDateTime.of(2022, 1, 1, 0, 0), decoded.getExpireTime());
+        assertEquals(shop, decoded.getData());
+        assertEquals(shop, binary.decode(bytes, Shop.class));
+    }
+
+    @Test
+    public void rejectsNewerFormatVersion() {
+        // 新版本写入的数据旧节点无法解析，由 CacheClient 按未命中处理
+        byte[] bytes = binary.encode(shop());
+        bytes[1] = 99;
+        assertThrows(IllegalStateException.class, () -> binary.decode(bytes, Shop.class));
+    }
+
+    @Test
+    public void rejectsNewerSchemaVersion() {
+        // 新版本的商铺结构写入的数据，头部第 4 个字节是结构版本
+        byte[] bytes = binary.encode(shop());
+        bytes[3] = (byte) (new ShopBinarySchema().version() + 1);
+        assertThrows(IllegalStateException.class, () -> binary.decode(bytes, Shop.class));
+        byte[] expiring = binary.encodeWithExpire(redisData(shop()));
+        expiring[3] = (byte) (new ShopBinarySchema().version() + 1);
+        assertThrows(IllegalStateException.class, () -> binary.decodeWithExpire(expiring, Shop.class));
+    }
+
+    @Test
+    public void readsLegacyJson() {
+        // 切换到二进制后，redis 中旧的 json 数据仍然可以读取
+        Shop shop = shop();
+        assertEquals(shop.getName(), binary.decode(json.encode(shop), Shop.class).getName());
+        RedisData decoded = binary.decodeWithExpire(json.encodeWithExpire(redisData(shop)), Shop.class);
+        assertEquals(shop.getName(), ((Shop) decoded.getData()).getName());
+    }
+
+    @Test
+    public void unregisteredTypeFallsBackToJson() {
+        RedisData inner = new RedisData();
+        inner.setExpireTime(LocalDateTime.of(2022, 1, 1, 0, 0));
+        byte[] bytes = binary.encode(inner);
+        assertEquals(inner.getExpireTime(), binary.decode(bytes, RedisData.class).getExpireTime());
+    }
+
+    static Shop shop() {
+        return new Shop()
+                .setId(1L)
+                .setName("103茶餐厅")
+                .setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg,https://qcloud.dpfile.com/pc/IOf6VX3qaBgFXFVgp75w-KKJmWZjFc8GXDU8g9bQC6YGCpAmG00QbfT4vCCBj7njuzFvxlbkWx5uwqY2qcjixFEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vmIU_8ZGOT1OjpJmLxG6urQ.jpg")
+                .setArea("大关")
+                .setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192)
+                .setY(30.316078)
+                .setAvgPrice(80L)
+                .setSold(4215)
+                .setComments(3035)
+                .setScore(37)
+                .setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+    }
+
+    static RedisData redisData(Shop shop) {
+        RedisData redisData = new RedisData();
+        redisData.setData(shop);
+        redisData.setExpireTime(LocalDateTime.of(2022, 1, 1, 12, 30, 15, 123000000));
+        redisData.setDelta(230L);
+        return redisData;
+    }
+}
@@ -0,0 +1,63 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 重建线程池的去重、丢弃和关闭
+ */
+public class CacheRebuildExecutorTest {
+
+    @Test
+    public void deduplicatesAndDropsWhenFull() throws InterruptedException {
+        // 1 个线程，队列长度 1
+        CacheRebuildExecutor executor = new CacheRebuildExecutor(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger rebuilds = new AtomicInteger();
+        Runnable task = () -> {
+            rebuilds.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        assertTrue(executor.submit("cache:shop:1", task));
+        // 同一个 key 还没有执行完，不会重复提交
+        assertFalse(executor.submit("cache:shop:1", task));
+        assertTrue(executor.submit("cache:shop:2", task));
+        // 线程和队列都已占满，丢弃
+        assertFalse(executor.submit("cache:shop:3", task));
+
+        release.countDown();
+        executor.shutdown();
+
+        Map<String, Object> stats = executor.stats();
+        assertEquals(2, rebuilds.get());
+        assertEquals(2L, stats.get("submitted"));
+        assertEquals(1L, stats.get("deduplicated"));
+        assertEquals(1L, stats.get("dropped"));
+        assertEquals(2L, stats.get("completed"));
+        assertEquals(0, stats.get("queueDepth"));
+    }
+
+    @Test
+    public void keyCanBeSubmittedAgainAfterCompletion() throws InterruptedException {
+        CacheRebuildExecutor executor = new CacheRebuildExecutor(1, 10);
+        CountDownLatch done = new CountDownLatch(2);
+        assertTrue(executor.submit("cache:shop:1", done::countDown));
+        Thread.sleep(100);
+        assertTrue(executor.submit("cache:shop:1", done::countDown));
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,44 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static com.hmdp.utils.GridSpatialIndexTest.MAX_X;
+import static com.hmdp.utils.GridSpatialIndexTest.MAX_Y;
+import static com.hmdp.utils.GridSpatialIndexTest.MIN_X;
+import static com.hmdp.utils.GridSpatialIndexTest.MIN_Y;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 100 万商铺下网格空间索引的加载和查询耗时，默认不执行，用 mvn test -Dtest=GridSpatialIndexBenchmarkTests 运行
+ */
+public class GridSpatialIndexBenchmarkTests {
+
+    @Test
+    public void benchmark() {
+        int n = 1000000;
+        Random random = new Random(2);
+        GridSpatialIndex index = new GridSpatialIndex(0.01);
+        long begin = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            index.put(i % 10, i, MIN_X + random.nextDouble() * (MAX_X - MIN_X), MIN_Y + random.nextDouble() * (MAX_Y - MIN_Y));
+        }
+        System.out.printf("加载 %d 个商铺耗时 %dms%n", n, (System.nanoTime() - begin) / 1000000);
+
+        long[] ids = new long[10];
+        double[] meters = new double[10];
+        int queries = 100000;
+        for (int i = 0; i < queries; i++) {
+            index.nearest(i % 10, 120.15, 30.28, 5000, ids, meters);
+        }
+        begin = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            double x = MIN_X + random.nextDouble() * (MAX_X - MIN_X);
+            double y = MIN_Y + random.nextDouble() * (MAX_Y - MIN_Y);
+            assertEquals(10, index.nearest(i % 10, x, y, 5000, ids, meters));
+        }
+        double micros = (System.nanoTime() - begin) / 1000.0 / queries;
+        System.out.printf("10 万商铺/类型，最近 10 个，平均 %.2fus/次%n", micros);
+    }
+}
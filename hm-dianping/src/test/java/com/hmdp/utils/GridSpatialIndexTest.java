@@ -0,0 +1,76 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 网格空间索引与暴力计算的结果对比
+ * 100 万商铺下的查询耗时见 GridSpatialIndexBenchmarkTests，与 redis GEO 的对比见 ShopGeoBenchmarkTests
+ */
+public class GridSpatialIndexTest {
+
+    // 杭州附近
+    static final double MIN_X = 119.9, MAX_X = 120.4, MIN_Y = 30.1, MAX_Y = 30.5;
+
+    @Test
+    public void nearestMatchesBruteForce() {
+        int n = 20000;
+        Random random = new Random(1);
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        GridSpatialIndex index = new GridSpatialIndex(0.01);
+        for (int i = 0; i < n; i++) {
+            xs[i] = MIN_X + random.nextDouble() * (MAX_X - MIN_X);
+            ys[i] = MIN_Y + random.nextDouble() * (MAX_Y - MIN_Y);
+            index.put(1, i, xs[i], ys[i]);
+        }
+        for (int q = 0; q < 200; q++) {
+            double x = MIN_X + random.nextDouble() * (MAX_X - MIN_X);
+            double y = MIN_Y + random.nextDouble() * (MAX_Y - MIN_Y);
+            double maxMeters = q % 2 == 0 ? Double.POSITIVE_INFINITY : 3000;
+            long[] ids = new long[10];
+            double[] meters = new double[10];
+            int count = index.nearest(1, x, y, maxMeters, ids, meters);
+
+            double[] expected = new double[n];
+            for (int i = 0; i < n; i++) {
+                expected[i] = GridSpatialIndex.distance(x, y, xs[i], ys[i]);
+            }
+            Arrays.sort(expected);
+            int expectedCount = 0;
+            while (expectedCount < 10 && expected[expectedCount] <= maxMeters) {
+                expectedCount++;
+            }
+            assertEquals(expectedCount, count);
+            assertArrayEquals(Arrays.copyOf(expected, count), Arrays.copyOf(meters, count), 1e-6);
+        }
+    }
+
+    @Test
+    public void moveAndRemove() {
+        GridSpatialIndex index = new GridSpatialIndex(0.01);
+        index.put(1, 100, 120.15, 30.28);
+        index.put(1, 101, 120.16, 30.28);
+        long[] ids = new long[5];
+        double[] meters = new double[5];
+
+        // 移动到另一个格子
+        index.put(1, 100, 120.30, 30.40);
+        assertEquals(1, index.nearest(1, 120.30, 30.40, 10, ids, meters));
+        assertEquals(100, ids[0]);
+
+        // 修改类型后只出现在新的分区
+        index.put(2, 100, 120.30, 30.40);
+        assertEquals(1, index.size(1));
+        assertEquals(1, index.nearest(2, 120.30, 30.40, 10, ids, meters));
+
+        index.remove(101);
+        assertEquals(0, index.size(1));
+        assertEquals(0, index.nearest(1, 120.16, 30.28, Double.POSITIVE_INFINITY, ids, meters));
+    }
+}
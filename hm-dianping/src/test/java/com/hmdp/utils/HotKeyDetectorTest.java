@@ -0,0 +1,36 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HotKeyDetectorTest {
+
+    @Test
+    public void promotesKeyAfterThreshold() {
+        HotKeyDetector detector = new HotKeyDetector(10, 100, 5, 1000);
+        for (int i = 0; i < 99; i++) {
+            assertFalse(detector.record("cache:shop:1"));
+        }
+        // 没有升级为热点前不写入副本
+        detector.putReplica("cache:shop:1", "shop");
+        assertNull(detector.getReplica("cache:shop:1", String.class));
+
+        assertTrue(detector.record("cache:shop:1"));
+        detector.putReplica("cache:shop:1", "shop");
+        assertEquals("shop", detector.getReplica("cache:shop:1", String.class));
+        assertEquals(1, detector.hotKeys().size());
+        assertFalse(detector.record("cache:shop:2"));
+    }
+
+    @Test
+    public void stopsTrackingWhenFull() {
+        HotKeyDetector detector = new HotKeyDetector(10, 1, 5, 2);
+        assertTrue(detector.record("a"));
+        assertTrue(detector.record("b"));
+        assertFalse(detector.record("c"));
+    }
+}
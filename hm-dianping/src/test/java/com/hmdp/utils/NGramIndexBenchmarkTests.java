@@ -0,0 +1,63 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.hmdp.utils.NGramIndexTest.randomName;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 100 万商铺名称下倒排索引与全量扫描的搜索耗时，默认不执行，用 mvn test -Dtest=NGramIndexBenchmarkTests 运行
+ */
+public class NGramIndexBenchmarkTests {
+
+    @Test
+    public void benchmark() {
+        int n = 1000000;
+        Random random = new Random(2);
+        NGramIndex index = new NGramIndex();
+        List<String> names = new ArrayList<>(n);
+        long begin = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            String name = randomName(random);
+            names.add(name);
+            index.put(i, name);
+        }
+        System.out.printf("加载 %d 个商铺名称耗时 %dms%n", n, (System.nanoTime() - begin) / 1000000);
+
+        int queries = 2000;
+        String[] keywords = new String[queries];
+        for (int i = 0; i < queries; i++) {
+            String name = names.get(random.nextInt(n));
+            int from = random.nextInt(name.length() - 1);
+            keywords[i] = name.substring(from, from + 2 + random.nextInt(Math.min(3, name.length() - from - 1)));
+        }
+        for (String keyword : keywords) {
+            index.search(keyword, 0, 10);
+        }
+        begin = System.nanoTime();
+        for (String keyword : keywords) {
+            index.search(keyword, 0, 10);
+        }
+        double indexMicros = (System.nanoTime() - begin) / 1000.0 / queries;
+
+        // 对比：逐个名称判断是否包含关键字，相当于 LIKE '%keyword%' 的全表扫描
+        begin = System.nanoTime();
+        for (int i = 0; i < 20; i++) {
+            String keyword = keywords[i];
+            long count = 0;
+            for (String name : names) {
+                if (name.contains(keyword)) {
+                    count++;
+                }
+            }
+            assertTrue(count > 0);
+        }
+        double scanMicros = (System.nanoTime() - begin) / 1000.0 / 20;
+        System.out.printf("倒排索引 %.2fus/次，全量扫描 %.2fus/次%n", indexMicros, scanMicros);
+        assertTrue(indexMicros < scanMicros);
+    }
+}
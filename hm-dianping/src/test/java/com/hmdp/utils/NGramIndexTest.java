@@ -0,0 +1,71 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 倒排索引的排序和更新，100 万商铺名称下的搜索耗时见 NGramIndexBenchmarkTests
+ */
+public class NGramIndexTest {
+
+    private static final String CHARS = "茶餐厅火锅烤肉串烧小吃面馆饺子米线麻辣烫川菜粤菜湘菜西餐咖啡奶酒吧甜品蛋糕披萨汉堡海鲜自助日料寿司拉面韩式炸鸡";
+
+    @Test
+    public void searchRanksAndPages() {
+        NGramIndex index = new NGramIndex();
+        index.put(1, "103茶餐厅");
+        index.put(2, "茶餐厅");
+        index.put(3, "茶餐厅(拱墅店)");
+        index.put(4, "海底捞火锅");
+        index.put(5, "Starbucks 星巴克");
+
+        assertEquals(Arrays.asList(2L, 3L, 1L), index.search("茶餐厅", 0, 10));
+        assertEquals(Arrays.asList(3L, 1L), index.search("茶餐厅", 1, 10));
+        assertEquals(Collections.singletonList(4L), index.search("火", 0, 10));
+        assertEquals(Collections.singletonList(5L), index.search("starbucks", 0, 10));
+        // 每个字都出现过，但不是连续的
+        assertTrue(index.search("茶火锅", 0, 10).isEmpty());
+        assertTrue(index.search("烤肉", 0, 10).isEmpty());
+
+        // 改名后旧名称搜索不到
+        index.put(4, "海底捞");
+        assertTrue(index.search("火锅", 0, 10).isEmpty());
+        assertEquals(Collections.singletonList(4L), index.search("海底", 0, 10));
+    }
+
+    @Test
+    public void matchesContainsOnRandomNames() {
+        Random random = new Random(1);
+        NGramIndex index = new NGramIndex();
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            String name = randomName(random);
+            names.add(name);
+            index.put(i, name);
+        }
+        for (int q = 0; q < 200; q++) {
+            String name = names.get(random.nextInt(names.size()));
+            int begin = random.nextInt(name.length());
+            String keyword = name.substring(begin, Math.min(name.length(), begin + 1 + random.nextInt(3)));
+            long expected = names.stream().filter(n -> n.contains(keyword)).count();
+            assertEquals(expected, index.search(keyword, 0, Integer.MAX_VALUE).size());
+        }
+    }
+
+    static String randomName(Random random) {
+        int length = 3 + random.nextInt(6);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(CHARS.charAt(random.nextInt(CHARS.length())));
+        }
+        return sb.toString();
+    }
+}
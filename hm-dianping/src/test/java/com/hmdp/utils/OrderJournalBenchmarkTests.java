@@ -0,0 +1,60 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.VoucherOrder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.hmdp.utils.OrderJournalTest.order;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 预写日志 100 万条订单的追加吞吐量、检查点和恢复耗时，默认不执行，用 mvn test -Dtest=OrderJournalBenchmarkTests 运行
+ */
+public class OrderJournalBenchmarkTests {
+
+    private static final int BENCHMARK_ORDERS = 1000000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void benchmark() throws IOException {
+        OrderJournal journal = new OrderJournal(dir, 64 << 20);
+        VoucherOrder order = order(0);
+        // 1.追加：每 1000 条刷盘一次，模拟定时批量刷盘
+        long begin = System.nanoTime();
+        for (long id = 1; id <= BENCHMARK_ORDERS; id++) {
+            order.setId(id);
+            journal.append(order);
+            if (id % 1000 == 0) {
+                journal.sync();
+            }
+        }
+        journal.sync();
+        long appendNanos = System.nanoTime() - begin;
+        // 2.一半订单写入检查点
+        List<Long> done = new ArrayList<>(BENCHMARK_ORDERS / 2);
+        for (long id = 2; id <= BENCHMARK_ORDERS; id += 2) {
+            done.add(id);
+        }
+        begin = System.nanoTime();
+        journal.checkpoint(done);
+        long checkpointNanos = System.nanoTime() - begin;
+        journal.close();
+        // 3.恢复：读取所有记录，得到没有检查点的订单
+        begin = System.nanoTime();
+        List<VoucherOrder> pending = new OrderJournal(dir, 64 << 20).pendingOrders();
+        long recoverNanos = System.nanoTime() - begin;
+        assertEquals(BENCHMARK_ORDERS / 2, pending.size());
+
+        System.out.printf("追加   %d 条 %.1f 万条/秒 %.0f ns/条%n", BENCHMARK_ORDERS,
+                BENCHMARK_ORDERS * 1e5 / appendNanos, (double) appendNanos / BENCHMARK_ORDERS);
+        System.out.printf("检查点 %d 条 %.1f 万条/秒%n", done.size(), done.size() * 1e5 / checkpointNanos);
+        System.out.printf("恢复   %d 条记录 %.0f ms%n", BENCHMARK_ORDERS + done.size(), recoverNanos / 1e6);
+    }
+}
@@ -0,0 +1,162 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.VoucherOrder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 预写日志的恢复、换段、压缩和损坏记录处理，追加吞吐量和恢复耗时见 OrderJournalBenchmarkTests
+ * 测试中不调用 close 的日志模拟进程崩溃
+ */
+public class OrderJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void recoversOrdersWithoutCheckpoint() throws IOException {
+        OrderJournal journal = new OrderJournal(dir, 1 << 20);
+        journal.append(order(1));
+        journal.append(order(2));
+        journal.append(order(3));
+        journal.checkpoint(Collections.singletonList(2L));
+
+        List<VoucherOrder> pending = new OrderJournal(dir, 1 << 20).pendingOrders();
+        assertEquals(Arrays.asList(1L, 3L), ids(pending));
+        assertEquals(1001L, pending.get(0).getUserId());
+        assertEquals(7L, pending.get(0).getVoucherId());
+    }
+
+    @Test
+    public void rotatesAndDeletesCompletedSegments() throws IOException {
+        // 每段 4 条记录
+        OrderJournal journal = new OrderJournal(dir, OrderJournal.RECORD_BYTES * 4);
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= 10; id++) {
+            journal.append(order(id));
+            ids.add(id);
+        }
+        assertEquals(3, segmentFiles());
+        journal.checkpoint(ids);
+        // 检查点记录也写入日志，旧段全部删除，只剩当前段
+        assertEquals(1, segmentFiles());
+        assertEquals(0, new OrderJournal(dir, OrderJournal.RECORD_BYTES * 4).pendingOrders().size());
+    }
+
+    @Test
+    public void compactionCopiesStuckOrders() throws IOException {
+        OrderJournal journal = new OrderJournal(dir, OrderJournal.RECORD_BYTES * 4);
+        for (long id = 1; id <= 10; id++) {
+            journal.append(order(id));
+        }
+        // 订单 1 一直没有检查点，最旧的段无法删除
+        List<Long> done = new ArrayList<>();
+        for (long id = 2; id <= 10; id++) {
+            done.add(id);
+        }
+        journal.checkpoint(done);
+        int before = segmentFiles();
+        assertEquals(1, journal.compact());
+        assertTrue(segmentFiles() < before);
+        assertEquals(Collections.singletonList(1L), ids(new OrderJournal(dir, OrderJournal.RECORD_BYTES * 4).pendingOrders()));
+    }
+
+    @Test
+    public void ignoresTornRecord() throws IOException {
+        OrderJournal journal = new OrderJournal(dir, 1 << 20);
+        journal.append(order(1));
+        journal.append(order(2));
+        journal.append(order(3));
+        journal.close();
+        // 第二条记录写了一半：并发追加时之后的记录可能已经完整写入，只跳过这一条
+        Path segment = onlySegment();
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(OrderJournal.RECORD_BYTES + 10);
+            file.write(0x7F);
+        }
+        assertEquals(Arrays.asList(1L, 3L), ids(new OrderJournal(dir, 1 << 20).pendingOrders()));
+    }
+
+    @Test
+    public void concurrentAppendsAcrossSegments() throws Exception {
+        // 每段 64 条记录，多个线程同时追加，频繁换段
+        OrderJournal journal = new OrderJournal(dir, OrderJournal.RECORD_BYTES * 64);
+        int threads = 8;
+        int perThread = 2000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long base = (long) t * perThread;
+            futures.add(pool.submit(() -> {
+                for (long id = base + 1; id <= base + perThread; id++) {
+                    journal.append(order(id));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+        // 一半订单写入检查点
+        List<Long> done = new ArrayList<>();
+        for (long id = 2; id <= threads * perThread; id += 2) {
+            done.add(id);
+        }
+        journal.checkpoint(done);
+
+        List<Long> expected = new ArrayList<>();
+        for (long id = 1; id <= threads * perThread; id += 2) {
+            expected.add(id);
+        }
+        assertEquals(expected, ids(new OrderJournal(dir, OrderJournal.RECORD_BYTES * 64).pendingOrders()));
+    }
+
+    private int segmentFiles() throws IOException {
+        int n = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path ignored : files) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private Path onlySegment() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            return files.iterator().next();
+        }
+    }
+
+    private static List<Long> ids(List<VoucherOrder> orders) {
+        List<Long> ids = new ArrayList<>();
+        for (VoucherOrder order : orders) {
+            ids.add(order.getId());
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    static VoucherOrder order(long id) {
+        VoucherOrder order = new VoucherOrder();
+        order.setId(id);
+        order.setUserId(1000 + id);
+        order.setVoucherId(7L);
+        return order;
+    }
+}
@@ -0,0 +1,64 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hmdp.utils.RedisIdWorkerTest.BEGIN_TIMESTAMP;
+import static com.hmdp.utils.RedisIdWorkerTest.RTT_NANOS;
+import static com.hmdp.utils.RedisIdWorkerTest.redis;
+import static com.hmdp.utils.RedisIdWorkerTest.run;
+
+/**
+ * 号段模式与每个id一次 INCR 的吞吐量对比，redis 用内存中的计数器模拟，
+ * 默认不执行，用 mvn test -Dtest=RedisIdWorkerBenchmarkTests 运行
+ */
+public class RedisIdWorkerBenchmarkTests {
+
+    @Test
+    public void benchmark() throws InterruptedException {
+        int threads = 8;
+        // 1.原来的实现：每个id一次 INCR，每次格式化日期
+        StringRedisTemplate redis = redis(RTT_NANOS, new ConcurrentHashMap<>(), new AtomicInteger());
+        int legacyIds = 4000;
+        long begin = System.nanoTime();
+        run(threads, () -> {
+            for (int i = 0; i < legacyIds / threads; i++) {
+                legacyNextId(redis, "legacy");
+            }
+        });
+        print("每个id一次 INCR", legacyIds, System.nanoTime() - begin);
+        // 2.号段模式：号段发放的时间小于一次往返时，预取来不及，会同步租用
+        for (int step : new int[]{100, 1000, 10000}) {
+            RedisIdWorker worker = new RedisIdWorker(redis, step);
+            int segmentIds = 4000000;
+            String keyPrefix = "segment" + step;
+            begin = System.nanoTime();
+            run(threads, () -> {
+                for (int i = 0; i < segmentIds / threads; i++) {
+                    worker.nextId(keyPrefix);
+                }
+            });
+            print("号段 " + step, segmentIds, System.nanoTime() - begin);
+            worker.shutdown();
+        }
+    }
+
+    // 原来的实现
+    private static long legacyNextId(StringRedisTemplate stringRedisTemplate, String keyPrefix) {
+        LocalDateTime now = LocalDateTime.now();
+        long timestamp = now.toEpochSecond(ZoneOffset.UTC) - BEGIN_TIMESTAMP;
+        String date = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
+        Long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);
+        return timestamp << 32 | count;
+    }
+
+    private static void print(String name, int ids, long nanos) {
+        System.out.printf("%-16s %.0f 个/秒 %.1f ns/个%n", name, ids * 1e9 / nanos, (double) nanos / ids);
+    }
+}
@@ -0,0 +1,126 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 号段模式的全局id：唯一、布局不变、跨天重新开始
+ * redis 用内存中的计数器模拟，每次命令休眠一段时间模拟网络往返
+ */
+public class RedisIdWorkerTest {
+
+    static final long BEGIN_TIMESTAMP = 1640995200L;
+    // 模拟的 redis 往返时间
+    static final long RTT_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    private final AtomicInteger commands = new AtomicInteger();
+
+    @Test
+    public void uniqueIdsWithSameLayout() throws InterruptedException {
+        RedisIdWorker worker = new RedisIdWorker(redis(RTT_NANOS, counters, commands), 1000);
+        int threads = 8;
+        int perThread = 50000;
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        long before = LocalDateTime.now().toEpochSecond(ZoneOffset.UTC) - BEGIN_TIMESTAMP;
+        run(threads, () -> {
+            for (int i = 0; i < perThread; i++) {
+                ids.add(worker.nextId("order"));
+            }
+        });
+        long after = LocalDateTime.now().toEpochSecond(ZoneOffset.UTC) - BEGIN_TIMESTAMP;
+        worker.shutdown();
+
+        assertEquals(threads * perThread, ids.size());
+        for (Long id : ids) {
+            // 高 31 位是与原来相同的时间戳，低 32 位是不超过 redis 计数器的序列号
+            long timestamp = id >>> 32;
+            assertTrue(timestamp >= before && timestamp <= after, "timestamp=" + timestamp);
+            assertTrue((id & 0xFFFFFFFFL) <= counters.get(key("order", LocalDate.now())).get());
+        }
+        // 每 1000 个id一次 INCRBY
+        assertTrue(commands.get() <= threads * perThread / 1000 + 2, "commands=" + commands.get());
+    }
+
+    @Test
+    public void restartsSequenceOnNewDay() {
+        RedisIdWorker worker = new RedisIdWorker(redis(0, counters, commands), 1000);
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate today = LocalDate.of(2024, 5, 1);
+        long beforeMidnight = today.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli() - 1;
+        long first = worker.nextId("order", beforeMidnight);
+        long second = worker.nextId("order", beforeMidnight + 1);
+        worker.shutdown();
+
+        assertEquals(1, first & 0xFFFFFFFFL);
+        // 跨天后使用新的 key，序列号重新开始
+        assertEquals(1, second & 0xFFFFFFFFL);
+        assertEquals(1000, counters.get(key("order", today)).get());
+        assertEquals(1000, counters.get(key("order", today.plusDays(1))).get());
+        assertEquals(1, (second >>> 32) - (first >>> 32));
+    }
+
+    static void run(int threads, Runnable task) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch latch = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            pool.submit(() -> {
+                try {
+                    task.run();
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        latch.await();
+        pool.shutdown();
+    }
+
+    private static String key(String keyPrefix, LocalDate date) {
+        return "icr:" + keyPrefix + ":" + date.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
+    }
+
+    // 只支持 INCR/INCRBY 的 redis，计数器和命令次数记录在传入的对象中
+    @SuppressWarnings("unchecked")
+    static StringRedisTemplate redis(long rttNanos, Map<String, AtomicLong> counters, AtomicInteger commands) {
+        ValueOperations<String, String> operations = (ValueOperations<String, String>) Proxy.newProxyInstance(
+                ValueOperations.class.getClassLoader(), new Class<?>[]{ValueOperations.class}, (proxy, method, args) -> {
+                    if (!"increment".equals(method.getName())) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    commands.incrementAndGet();
+                    if (rttNanos > 0) {
+                        LockSupport.parkNanos(rttNanos);
+                    }
+                    long delta = args.length == 1 ? 1 : (Long) args[1];
+                    return counters.computeIfAbsent((String) args[0], k -> new AtomicLong()).addAndGet(delta);
+                });
+        return new StringRedisTemplate() {
+            @Override
+            public ValueOperations<String, String> opsForValue() {
+                return operations;
+            }
+        };
+    }
+}
@@ -0,0 +1,64 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static com.hmdp.utils.RingBufferTest.PER_PRODUCER;
+import static com.hmdp.utils.RingBufferTest.PRODUCERS;
+import static com.hmdp.utils.RingBufferTest.startProducers;
+
+/**
+ * 多生产者写入时环形队列与 ArrayBlockingQueue 的吞吐量对比，默认不执行，用 mvn test -Dtest=RingBufferBenchmarkTests 运行
+ */
+public class RingBufferBenchmarkTests {
+
+    @Test
+    public void ringBuffer() throws InterruptedException {
+        RingBuffer<Long> ring = new RingBuffer<>(1024);
+        long begin = System.nanoTime();
+        startProducers(value -> {
+            while (!ring.offer(value)) {
+                Thread.yield();
+            }
+        });
+        List<Long> batch = new ArrayList<>(256);
+        int total = 0;
+        while (total < PRODUCERS * PER_PRODUCER) {
+            if (ring.drainTo(batch, 256) == 0) {
+                Thread.yield();
+                continue;
+            }
+            total += batch.size();
+            batch.clear();
+        }
+        long nanos = System.nanoTime() - begin;
+        System.out.printf("RingBuffer         %d 个生产者 %.1f 万条/秒%n", PRODUCERS, total * 1e5 / nanos);
+    }
+
+    @Test
+    public void blockingQueueBaseline() throws InterruptedException {
+        BlockingQueue<Long> queue = new ArrayBlockingQueue<>(1024);
+        long begin = System.nanoTime();
+        startProducers(value -> {
+            while (!queue.offer(value)) {
+                Thread.yield();
+            }
+        });
+        List<Long> batch = new ArrayList<>(256);
+        int total = 0;
+        while (total < PRODUCERS * PER_PRODUCER) {
+            if (queue.drainTo(batch, 256) == 0) {
+                Thread.yield();
+                continue;
+            }
+            total += batch.size();
+            batch.clear();
+        }
+        long nanos = System.nanoTime() - begin;
+        System.out.printf("ArrayBlockingQueue %d 个生产者 %.1f 万条/秒%n", PRODUCERS, total * 1e5 / nanos);
+    }
+}
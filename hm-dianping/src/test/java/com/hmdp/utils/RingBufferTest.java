@@ -0,0 +1,93 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.LongConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 环形队列的顺序、容量和多生产者并发写入，与 ArrayBlockingQueue 的吞吐量对比见 RingBufferBenchmarkTests
+ */
+public class RingBufferTest {
+
+    static final int PRODUCERS = 4;
+    static final int PER_PRODUCER = 500000;
+
+    @Test
+    public void fifoAndCapacity() {
+        // 容量向上取整为 2 的幂
+        RingBuffer<Integer> ring = new RingBuffer<>(3);
+        assertEquals(4, ring.capacity());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(i));
+        }
+        // 已满，立即返回
+        assertFalse(ring.offer(4));
+        assertEquals(4, ring.size());
+
+        List<Integer> out = new ArrayList<>();
+        assertEquals(3, ring.drainTo(out, 3));
+        assertTrue(ring.offer(4));
+        assertEquals(2, ring.drainTo(out, 10));
+        assertEquals(0, ring.drainTo(out, 10));
+        assertTrue(ring.isEmpty());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, out.get(i));
+        }
+    }
+
+    @Test
+    public void concurrentProducers() throws InterruptedException {
+        RingBuffer<Long> ring = new RingBuffer<>(1024);
+        startProducers(value -> {
+            while (!ring.offer(value)) {
+                Thread.yield();
+            }
+        });
+        // 每个生产者写入的值必须全部出现，并且保持各自的写入顺序
+        long[] last = new long[PRODUCERS];
+        Arrays.fill(last, -1);
+        List<Long> batch = new ArrayList<>(256);
+        int total = 0;
+        while (total < PRODUCERS * PER_PRODUCER) {
+            if (ring.drainTo(batch, 256) == 0) {
+                Thread.yield();
+                continue;
+            }
+            for (long value : batch) {
+                int producer = (int) (value / PER_PRODUCER);
+                assertTrue(value > last[producer]);
+                last[producer] = value;
+            }
+            total += batch.size();
+            batch.clear();
+        }
+        for (int p = 0; p < PRODUCERS; p++) {
+            assertEquals((long) (p + 1) * PER_PRODUCER - 1, last[p]);
+        }
+        assertTrue(ring.isEmpty());
+    }
+
+    static void startProducers(LongConsumer offer) throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(PRODUCERS);
+        for (int p = 0; p < PRODUCERS; p++) {
+            long base = (long) p * PER_PRODUCER;
+            Thread thread = new Thread(() -> {
+                ready.countDown();
+                for (int i = 0; i < PER_PRODUCER; i++) {
+                    offer.accept(base + i);
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+        ready.await();
+    }
+}
@@ -0,0 +1,31 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 本地售罄判断的耗时，默认不执行，用 mvn test -Dtest=SeckillAdmissionBenchmarkTests 运行
+ */
+public class SeckillAdmissionBenchmarkTests {
+
+    private static final int ITERATIONS = 10000000;
+
+    @Test
+    public void benchmark() {
+        SeckillAdmission admission = new SeckillAdmission(null, 60000, 0, 1);
+        admission.reset(1L, 0);
+        Long voucherId = 1L;
+        int rejected = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            rejected += admission.isSoldOut(voucherId) ? 1 : 0;
+        }
+        long begin = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            rejected += admission.isSoldOut(voucherId) ? 1 : 0;
+        }
+        long nanos = System.nanoTime() - begin;
+        assertEquals(2 * ITERATIONS, rejected);
+        System.out.printf("售罄判断 %.1f ns/次%n", (double) nanos / ITERATIONS);
+    }
+}
@@ -0,0 +1,72 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+
+import java.nio.charset.StandardCharsets;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_REPLENISH_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 本地售罄标记和令牌预算，频道消息用 onMessage 模拟，不连接 redis，售罄判断的耗时见 SeckillAdmissionBenchmarkTests
+ */
+public class SeckillAdmissionTest {
+
+    @Test
+    public void soldOutSyncAndReplenish() {
+        SeckillAdmission admission = new SeckillAdmission(null, 60000, 0, 1);
+        assertFalse(admission.isSoldOut(1L));
+        // 其它节点通知售罄
+        admission.onMessage(message(SECKILL_SOLD_OUT_CHANNEL, "1"), null);
+        assertTrue(admission.isSoldOut(1L));
+        assertFalse(admission.isSoldOut(2L));
+        // 补充库存
+        admission.onMessage(message(SECKILL_REPLENISH_CHANNEL, "1:100"), null);
+        assertFalse(admission.isSoldOut(1L));
+        // 启动时 redis 中的库存为 0
+        admission.reset(3L, 0);
+        assertTrue(admission.isSoldOut(3L));
+        // 撤销秒杀归还了库存，只清除售罄标记
+        admission.onMessage(message(SECKILL_REPLENISH_CHANNEL, "3:-1"), null);
+        assertFalse(admission.isSoldOut(3L));
+    }
+
+    @Test
+    public void soldOutExpires() throws InterruptedException {
+        SeckillAdmission admission = new SeckillAdmission(null, 50, 0, 1);
+        admission.onMessage(message(SECKILL_SOLD_OUT_CHANNEL, "1"), null);
+        assertTrue(admission.isSoldOut(1L));
+        Thread.sleep(100);
+        assertFalse(admission.isSoldOut(1L));
+    }
+
+    @Test
+    public void tokenBudget() {
+        // 库存 10，系数 1.5，2 个节点：每个节点 8 个令牌
+        SeckillAdmission admission = new SeckillAdmission(null, 60000, 1.5, 2);
+        admission.reset(1L, 10);
+        for (int i = 0; i < 8; i++) {
+            assertTrue(admission.tryAcquire(1L));
+        }
+        assertFalse(admission.tryAcquire(1L));
+        // 重复下单等失败的秒杀归还令牌
+        admission.release(1L);
+        assertTrue(admission.tryAcquire(1L));
+        assertFalse(admission.tryAcquire(1L));
+        // 补充库存后重置
+        admission.onMessage(message(SECKILL_REPLENISH_CHANNEL, "1:2"), null);
+        assertTrue(admission.tryAcquire(1L));
+        assertTrue(admission.tryAcquire(1L));
+        assertFalse(admission.tryAcquire(1L));
+        // 没有初始化的优惠券不限制
+        assertTrue(admission.tryAcquire(2L));
+    }
+
+    private static DefaultMessage message(String channel, String body) {
+        return new DefaultMessage(channel.getBytes(StandardCharsets.UTF_8), body.getBytes(StandardCharsets.UTF_8));
+    }
+}
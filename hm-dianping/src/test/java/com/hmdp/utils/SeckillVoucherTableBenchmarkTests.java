@@ -0,0 +1,36 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static com.hmdp.utils.SeckillVoucherTableTest.voucher;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 本地秒杀时间表判断秒杀是否结束的耗时，默认不执行，用 mvn test -Dtest=SeckillVoucherTableBenchmarkTests 运行
+ */
+public class SeckillVoucherTableBenchmarkTests {
+
+    private static final int ITERATIONS = 10000000;
+
+    @Test
+    public void benchmark() {
+        // 不传入数据库，命中时不会查询
+        SeckillVoucherTable table = new SeckillVoucherTable(null, null, null, 60000);
+        LocalDateTime now = LocalDateTime.now();
+        table.put(voucher(1L, now.minusHours(2), now.minusHours(1)));
+        Long voucherId = 1L;
+        int rejected = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            rejected += table.get(voucherId).isEnded(System.currentTimeMillis()) ? 1 : 0;
+        }
+        long begin = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            rejected += table.get(voucherId).isEnded(System.currentTimeMillis()) ? 1 : 0;
+        }
+        long nanos = System.nanoTime() - begin;
+        assertEquals(2 * ITERATIONS, rejected);
+        System.out.printf("秒杀时间判断 %.1f ns/次%n", (double) nanos / ITERATIONS);
+    }
+}
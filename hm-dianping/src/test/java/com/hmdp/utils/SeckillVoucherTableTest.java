@@ -0,0 +1,151 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.service.ISeckillVoucherService;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_VOUCHER_CHANNEL;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 本地秒杀时间表：命中时不查询数据库，变更通知重新加载，不存在和已结束的秒杀券只查询一次数据库，
+ * 布隆过滤器不再包含时移除
+ * 数据库和布隆过滤器用内存中的集合模拟，频道消息用 onMessage 模拟，不连接 redis，判断耗时见 SeckillVoucherTableBenchmarkTests
+ */
+public class SeckillVoucherTableTest {
+
+    private final Map<Long, SeckillVoucher> database = new HashMap<>();
+    // 从布隆过滤器中删除的 id，其它 id 都可能存在
+    private final Set<Long> removed = new HashSet<>();
+    private final AtomicInteger queries = new AtomicInteger();
+    // 查询数据库之后、返回结果之前执行，模拟并发的变更通知
+    private Runnable afterQuery = () -> { };
+
+    @Test
+    public void rejectsWithoutQueryingDatabase() {
+        SeckillVoucherTable table = new SeckillVoucherTable(service(), null, bloom(), 60000);
+        LocalDateTime now = LocalDateTime.now();
+        table.put(voucher(1L, now.plusHours(1), now.plusHours(2)));
+        table.put(voucher(2L, now.minusHours(2), now.minusHours(1)));
+        table.put(voucher(3L, now.minusHours(1), now.plusHours(1)));
+        long millis = System.currentTimeMillis();
+        assertFalse(table.get(1L).isStarted(millis));
+        assertTrue(table.get(2L).isEnded(millis));
+        assertTrue(table.get(3L).isStarted(millis));
+        assertFalse(table.get(3L).isEnded(millis));
+        assertEquals(0, queries.get());
+    }
+
+    @Test
+    public void loadsMissAndReloadsOnChange() {
+        SeckillVoucherTable table = new SeckillVoucherTable(service(), null, bloom(), 60000);
+        LocalDateTime now = LocalDateTime.now();
+        database.put(1L, voucher(1L, now.plusHours(1), now.plusHours(2)));
+        // 表中没有时查询一次数据库
+        assertFalse(table.get(1L).isStarted(System.currentTimeMillis()));
+        assertFalse(table.get(1L).isStarted(System.currentTimeMillis()));
+        assertEquals(1, queries.get());
+        // 其它节点修改了秒杀时间
+        database.put(1L, voucher(1L, now.minusHours(1), now.plusHours(2)));
+        table.onMessage(message("1"), null);
+        assertTrue(table.get(1L).isStarted(System.currentTimeMillis()));
+        // 秒杀券不存在，只查询一次数据库
+        assertNull(table.get(9L));
+        assertNull(table.get(9L));
+        assertEquals(3, queries.get());
+        // 新建后通过变更通知加载
+        database.put(9L, voucher(9L, now.minusHours(1), now.plusHours(1)));
+        table.onMessage(message("9"), null);
+        assertTrue(table.get(9L).isStarted(System.currentTimeMillis()));
+    }
+
+    @Test
+    public void staleLoadDoesNotOverwriteChange() {
+        SeckillVoucherTable table = new SeckillVoucherTable(service(), null, bloom(), 60000);
+        LocalDateTime now = LocalDateTime.now();
+        // 请求查询到修改前的时间，返回前其它节点修改了秒杀时间并通知到本节点
+        database.put(1L, voucher(1L, now.plusHours(1), now.plusHours(2)));
+        afterQuery = () -> table.put(voucher(1L, now.minusHours(1), now.plusHours(2)));
+        table.get(1L);
+        afterQuery = () -> { };
+        assertTrue(table.get(1L).isStarted(System.currentTimeMillis()));
+        assertEquals(1, queries.get());
+    }
+
+    @Test
+    public void evictsEndedVouchers() {
+        SeckillVoucherTable table = new SeckillVoucherTable(service(), null, bloom(), 1000);
+        LocalDateTime now = LocalDateTime.now();
+        table.put(voucher(1L, now.minusHours(2), now.minusHours(1)));
+        table.put(voucher(2L, now.minusHours(2), now.plusHours(1)));
+        // 修改结束时间后按新的结束时间移除
+        table.put(voucher(2L, now.minusHours(2), now.minusHours(1)));
+        table.put(voucher(3L, now.minusHours(2), now));
+        assertNull(table.get(9L));
+        table.evictEnded();
+        // 已结束的秒杀券只保留结束的标记，仍然不查询数据库
+        assertEquals(4, table.stats().get("size"));
+        assertEquals(3, table.stats().get("ended"));
+        assertEquals(1, table.stats().get("missing"));
+        assertTrue(table.get(1L).isEnded(System.currentTimeMillis()));
+        assertTrue(table.get(2L).isEnded(System.currentTimeMillis()));
+        assertNull(table.get(9L));
+        assertEquals(1, queries.get());
+        // 优惠券删除后布隆过滤器不再包含，标记被移除；没有超过 retention-ms 的秒杀券保留
+        removed.add(1L);
+        removed.add(3L);
+        removed.add(9L);
+        table.evictEnded();
+        assertEquals(2, table.stats().get("size"));
+        assertEquals(2, table.stats().get("ended"));
+        assertEquals(0, table.stats().get("missing"));
+    }
+
+    private ISeckillVoucherService service() {
+        return (ISeckillVoucherService) Proxy.newProxyInstance(ISeckillVoucherService.class.getClassLoader(),
+                new Class<?>[]{ISeckillVoucherService.class}, (proxy, method, args) -> {
+                    if ("getById".equals(method.getName())) {
+                        queries.incrementAndGet();
+                        SeckillVoucher voucher = database.get((Long) args[0]);
+                        afterQuery.run();
+                        return voucher;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private RedisBloomFilter bloom() {
+        return new RedisBloomFilter("bloom:voucher", null, 100, 0.01, null) {
+            @Override
+            public boolean mightContain(Long id) {
+                return !removed.contains(id);
+            }
+        };
+    }
+
+    static SeckillVoucher voucher(Long voucherId, LocalDateTime beginTime, LocalDateTime endTime) {
+        SeckillVoucher voucher = new SeckillVoucher();
+        voucher.setVoucherId(voucherId);
+        voucher.setStock(100);
+        voucher.setBeginTime(beginTime);
+        voucher.setEndTime(endTime);
+        return voucher;
+    }
+
+    private static DefaultMessage message(String body) {
+        return new DefaultMessage(SECKILL_VOUCHER_CHANNEL.getBytes(StandardCharsets.UTF_8), body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,99 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.service.ICacheOutboxService;
+import com.hmdp.service.impl.ShopServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 修改商铺后名称索引同步：只修改名称的更新也会发布 ShopChangedEvent
+ * 数据库用内存中的 map 模拟，事件直接交给名称索引处理，不连接 mysql 和 redis
+ */
+public class ShopNameIndexTest {
+
+    private final Map<Long, Shop> database = new HashMap<>();
+
+    @Test
+    public void renamedShopIsSearchable() {
+        ShopNameIndex shopNameIndex = new ShopNameIndex();
+        ReflectionTestUtils.setField(shopNameIndex, "enabled", true);
+        ShopServiceImpl shopService = new ShopServiceImpl();
+        ReflectionTestUtils.setField(shopService, "baseMapper", mapper());
+        ReflectionTestUtils.setField(shopService, "cacheOutboxService", proxy(ICacheOutboxService.class));
+        ReflectionTestUtils.setField(shopService, "eventPublisher",
+                (ApplicationEventPublisher) event -> shopNameIndex.onShopChanged((ShopChangedEvent) event));
+
+        Shop shop = new Shop();
+        shop.setId(1L);
+        shop.setName("海底捞火锅");
+        shop.setTypeId(1L);
+        shop.setX(120.149993);
+        shop.setY(30.334229);
+        database.put(1L, shop);
+        shopNameIndex.onShopChanged(new ShopChangedEvent(this, null, shop));
+        assertEquals(Collections.singletonList(1L), shopNameIndex.search("火锅", 0, 10));
+
+        // 只修改名称，坐标和类型为 null
+        Shop renamed = new Shop();
+        renamed.setId(1L);
+        renamed.setName("小龙坎老火锅");
+        assertTrue(shopService.update(renamed).getSuccess());
+        assertEquals(Collections.singletonList(1L), shopNameIndex.search("小龙坎", 0, 10));
+        assertTrue(shopNameIndex.search("海底捞", 0, 10).isEmpty());
+    }
+
+    private ShopMapper mapper() {
+        return (ShopMapper) Proxy.newProxyInstance(ShopMapper.class.getClassLoader(),
+                new Class<?>[]{ShopMapper.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "selectById":
+                            return copy(database.get((Long) args[0]));
+                        case "updateById":
+                            // 只更新不为 null 的字段
+                            Shop update = (Shop) args[0];
+                            Shop shop = database.get(update.getId());
+                            if (shop == null) {
+                                return 0;
+                            }
+                            if (update.getName() != null) {
+                                shop.setName(update.getName());
+                            }
+                            return 1;
+                        case "toString":
+                            return "shopMapper";
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) ->
+                "toString".equals(method.getName()) ? type.getSimpleName() : null);
+    }
+
+    private static Shop copy(Shop shop) {
+        if (shop == null) {
+            return null;
+        }
+        Shop copy = new Shop();
+        copy.setId(shop.getId());
+        copy.setName(shop.getName());
+        copy.setTypeId(shop.getTypeId());
+        copy.setX(shop.getX());
+        copy.setY(shop.getY());
+        return copy;
+    }
+}
@@ -0,0 +1,59 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 1000 个线程同时查询同一个未命中的 key 时的数据库查询次数和 p50/p99 耗时，
+ * 默认不执行，用 mvn test -Dtest=SingleFlightBenchmarkTests 运行
+ */
+public class SingleFlightBenchmarkTests {
+
+    private static final int THREADS = 1000;
+
+    @Test
+    public void benchmark() throws InterruptedException {
+        SingleFlight singleFlight = new SingleFlight();
+        AtomicInteger dbLoads = new AtomicInteger();
+        long[] latencies = new long[THREADS];
+        CountDownLatch arrived = new CountDownLatch(THREADS);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+
+        for (int i = 0; i < THREADS; i++) {
+            int index = i;
+            pool.submit(() -> {
+                arrived.countDown();
+                long begin = System.nanoTime();
+                singleFlight.execute("cache:shop:1", () -> {
+                    // 模拟数据库查询，直到所有线程都到达后才返回
+                    dbLoads.incrementAndGet();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return 1L;
+                });
+                latencies[index] = System.nanoTime() - begin;
+                done.countDown();
+            });
+        }
+        arrived.await();
+        Thread.sleep(100);
+        release.countDown();
+        done.await(10, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        Arrays.sort(latencies);
+        System.out.printf("线程数=%d 数据库查询=%d p50=%.2fms p99=%.2fms%n", THREADS, dbLoads.get(),
+                latencies[THREADS / 2] / 1e6, latencies[(int) (THREADS * 0.99)] / 1e6);
+    }
+}
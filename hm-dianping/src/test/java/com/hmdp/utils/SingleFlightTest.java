@@ -0,0 +1,69 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 1000 个线程同时查询同一个未命中的 key，只查询一次数据库，等待耗时见 SingleFlightBenchmarkTests
+ */
+public class SingleFlightTest {
+
+    private static final int THREADS = 1000;
+
+    @Test
+    public void concurrentMissesShareOneLoad() throws InterruptedException {
+        SingleFlight singleFlight = new SingleFlight();
+        AtomicInteger dbLoads = new AtomicInteger();
+        AtomicInteger results = new AtomicInteger();
+        CountDownLatch arrived = new CountDownLatch(THREADS);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+
+        for (int i = 0; i < THREADS; i++) {
+            pool.submit(() -> {
+                arrived.countDown();
+                Long shopId = singleFlight.execute("cache:shop:1", () -> {
+                    // 模拟数据库查询，直到所有线程都到达后才返回
+                    dbLoads.incrementAndGet();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return 1L;
+                });
+                if (shopId == 1L) {
+                    results.incrementAndGet();
+                }
+                done.countDown();
+            });
+        }
+        arrived.await();
+        Thread.sleep(100);
+        release.countDown();
+        done.await(10, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        assertEquals(1, dbLoads.get());
+        assertEquals(THREADS, results.get());
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    public void loaderExceptionIsRethrown() {
+        SingleFlight singleFlight = new SingleFlight();
+        assertThrows(IllegalStateException.class, () -> singleFlight.execute("cache:shop:2", () -> {
+            throw new IllegalStateException("db down");
+        }));
+        assertEquals(0, singleFlight.inFlight());
+    }
+}
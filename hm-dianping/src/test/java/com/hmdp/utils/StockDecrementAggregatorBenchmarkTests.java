@@ -0,0 +1,52 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.VoucherOrderBatchResult;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hmdp.utils.StockDecrementAggregatorTest.order;
+import static com.hmdp.utils.StockDecrementAggregatorTest.service;
+import static com.hmdp.utils.StockDecrementAggregatorTest.sleep;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 每次扣减耗时 1 毫秒时库存扣减聚合的吞吐量，默认不执行，用 mvn test -Dtest=StockDecrementAggregatorBenchmarkTests 运行
+ */
+public class StockDecrementAggregatorBenchmarkTests {
+
+    private static final int ORDERS = 100000;
+
+    @Test
+    public void benchmark() throws InterruptedException {
+        AtomicInteger updates = new AtomicInteger();
+        StockDecrementAggregator aggregator = new StockDecrementAggregator(2, 500, 65536);
+        ReflectionTestUtils.setField(aggregator, "voucherOrderService", service(orders -> {
+            updates.incrementAndGet();
+            sleep();
+            VoucherOrderBatchResult result = new VoucherOrderBatchResult();
+            orders.forEach(order -> result.getCreated().add(order.getId()));
+            return result;
+        }));
+        aggregator.start();
+
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>(ORDERS);
+        long begin = System.nanoTime();
+        for (long id = 1; id <= ORDERS; id++) {
+            futures.add(aggregator.submit(order(id)));
+        }
+        int created = 0;
+        for (CompletableFuture<Boolean> future : futures) {
+            created += future.join() ? 1 : 0;
+        }
+        long nanos = System.nanoTime() - begin;
+        aggregator.shutdown();
+
+        assertEquals(ORDERS, created);
+        System.out.printf("%d 个订单 %d 次扣减 %.0f 单/秒%n", ORDERS, updates.get(), ORDERS * 1e9 / nanos);
+    }
+}
@@ -0,0 +1,148 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.VoucherOrderBatchResult;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 库存扣减聚合：连续提交的订单合并成批，每批对库存行只扣减一次，结果拆回每个订单
+ * 数据库用内存中的库存模拟，每次扣减耗时 1 毫秒，模拟持有行锁的时间，吞吐量见 StockDecrementAggregatorBenchmarkTests
+ */
+public class StockDecrementAggregatorTest {
+
+    private static final int STOCK = 1000;
+    private static final int ORDERS = 2000;
+
+    @Test
+    public void coalescesDecrementsAndSplitsOutcomes() throws InterruptedException {
+        AtomicInteger stock = new AtomicInteger(STOCK);
+        AtomicInteger updates = new AtomicInteger();
+        StockDecrementAggregator aggregator = new StockDecrementAggregator(2, 500, 65536);
+        ReflectionTestUtils.setField(aggregator, "voucherOrderService", service(orders -> {
+            // 每批一次 stock = stock - N，库存不够时只扣减剩余的库存
+            updates.incrementAndGet();
+            sleep();
+            int n = Math.min(stock.get(), orders.size());
+            stock.addAndGet(-n);
+            VoucherOrderBatchResult result = new VoucherOrderBatchResult();
+            for (int i = 0; i < orders.size(); i++) {
+                if (i < n) {
+                    result.getCreated().add(orders.get(i).getId());
+                } else {
+                    result.getRejected().put(orders.get(i).getId(), "库存不足");
+                }
+            }
+            return result;
+        }));
+        aggregator.start();
+
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>(ORDERS);
+        for (long id = 1; id <= ORDERS; id++) {
+            futures.add(aggregator.submit(order(id)));
+        }
+        int created = 0;
+        for (CompletableFuture<Boolean> future : futures) {
+            created += future.join() ? 1 : 0;
+        }
+        aggregator.shutdown();
+
+        // 不超卖，每个订单都有结果
+        assertEquals(STOCK, created);
+        assertEquals(0, stock.get());
+        // 库存行的扣减次数远小于订单数
+        assertTrue(updates.get() < ORDERS / 10, "updates=" + updates.get());
+    }
+
+    @Test
+    public void fallsBackToSingleOrdersWhenBatchFails() throws InterruptedException {
+        StockDecrementAggregator aggregator = new StockDecrementAggregator(50, 500, 1024);
+        ReflectionTestUtils.setField(aggregator, "voucherOrderService", service(orders -> {
+            // 订单 2 写入异常，整批失败
+            for (VoucherOrder order : orders) {
+                if (order.getId() == 2L) {
+                    throw new IllegalStateException("写入失败");
+                }
+            }
+            VoucherOrderBatchResult result = new VoucherOrderBatchResult();
+            for (VoucherOrder order : orders) {
+                result.getCreated().add(order.getId());
+            }
+            return result;
+        }));
+        aggregator.start();
+        CompletableFuture<Boolean> first = aggregator.submit(order(1));
+        CompletableFuture<Boolean> second = aggregator.submit(order(2));
+        CompletableFuture<Boolean> third = aggregator.submit(order(3));
+        assertTrue(first.join());
+        assertTrue(third.join());
+        assertTrue(second.isCompletedExceptionally());
+        aggregator.shutdown();
+    }
+
+    @Test
+    public void ordersMissingFromResultAreNotPersisted() throws InterruptedException {
+        StockDecrementAggregator aggregator = new StockDecrementAggregator(50, 500, 1024);
+        ReflectionTestUtils.setField(aggregator, "voucherOrderService", service(orders -> {
+            // 结果中只有订单 1 写入、订单 2 已经存在，订单 3 没有出现在任何结果中
+            VoucherOrderBatchResult result = new VoucherOrderBatchResult();
+            result.getCreated().add(1L);
+            result.getExisting().add(2L);
+            return result;
+        }));
+        aggregator.start();
+        CompletableFuture<Boolean> first = aggregator.submit(order(1));
+        CompletableFuture<Boolean> second = aggregator.submit(order(2));
+        CompletableFuture<Boolean> third = aggregator.submit(order(3));
+        assertTrue(first.join());
+        assertTrue(second.join());
+        assertFalse(third.join());
+        aggregator.shutdown();
+    }
+
+    static IVoucherOrderService service(BatchHandler handler) {
+        return (IVoucherOrderService) Proxy.newProxyInstance(IVoucherOrderService.class.getClassLoader(),
+                new Class<?>[]{IVoucherOrderService.class}, (proxy, method, args) -> {
+                    if ("createVoucherOrders".equals(method.getName())) {
+                        @SuppressWarnings("unchecked")
+                        List<VoucherOrder> orders = (List<VoucherOrder>) args[0];
+                        return handler.handle(orders);
+                    }
+                    if ("toString".equals(method.getName())) {
+                        return "voucherOrderService";
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    static void sleep() {
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static VoucherOrder order(long id) {
+        VoucherOrder order = new VoucherOrder();
+        order.setId(id);
+        order.setUserId(1000 + id);
+        order.setVoucherId(7L);
+        return order;
+    }
+
+    interface BatchHandler {
+        VoucherOrderBatchResult handle(List<VoucherOrder> orders);
+    }
+}